@@ -0,0 +1,105 @@
+package tools.customizable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JSpinner;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link AbstractSwingProperty#setValue(Object)} with a number of
+ * editors.
+ * <p>
+ * Both benchmarks set the value on the benchmark thread, as a background
+ * updater would. {@link #setValue()} measures the cost to that thread, with the
+ * editors left to the {@link UpdateScheduler}; since they are never shown
+ * (the benchmark runs headless), the event dispatch thread only marks them to
+ * be updated when shown. {@link #setValueAndUpdate()} adds the cost of
+ * updating each editor, as is done for editors that are showing. The editors
+ * are never displayable, so updating them off the event dispatch thread is
+ * harmless.
+ * 
+ * @author William Chargin
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class EditorBenchmark {
+
+	/**
+	 * The number of editors.
+	 */
+	@Param({ "1", "10", "100" })
+	public int editors;
+
+	/**
+	 * The property being edited.
+	 */
+	private IntProperty property;
+
+	/**
+	 * The editors of the property.
+	 */
+	private final List<JSpinner> spinners = new ArrayList<JSpinner>();
+
+	/**
+	 * The value to set next.
+	 */
+	private int next;
+
+	/**
+	 * Creates the property and its editors.
+	 */
+	@Setup
+	public void setUp() {
+		property = new IntProperty("int", 0); //$NON-NLS-1$
+		for (int i = 0; i < editors; i++) {
+			spinners.add(property.getEditor());
+		}
+	}
+
+	/**
+	 * Releases the editors.
+	 */
+	@TearDown
+	public void tearDown() {
+		property.releaseAll();
+		spinners.clear();
+	}
+
+	/**
+	 * Sets a new value.
+	 */
+	@Benchmark
+	public void setValue() {
+		property.setValue(Integer.valueOf(++next & 0xFF));
+	}
+
+	/**
+	 * Sets a new value and updates every editor.
+	 */
+	@Benchmark
+	public void setValueAndUpdate() {
+		property.setValue(Integer.valueOf(++next & 0xFF));
+		for (int i = 0; i < spinners.size(); i++) {
+			property.updateEditor(spinners.get(i));
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package tools.customizable;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures {@link AbstractProperty#setValue(Object)} and
+ * {@link AbstractProperty#fireChangeEvent()} with a number of listeners.
+ * <p>
+ * The properties have no editors or viewers. {@code setValue} is measured
+ * with value listeners only, which are notified on the thread that sets the
+ * value; {@code fireChangeEvent} is measured with change listeners only.
+ * 
+ * @author William Chargin
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ListenerBenchmark {
+
+	/**
+	 * The number of listeners of each kind.
+	 */
+	@Param({ "0", "1", "10", "100" })
+	public int listeners;
+
+	/**
+	 * The property whose value is set.
+	 */
+	private TextProperty text;
+
+	/**
+	 * The property whose change listeners are notified.
+	 */
+	private TextProperty changing;
+
+	/**
+	 * The two values that are set in turn, so that each call changes the
+	 * value.
+	 */
+	private final String[] values = { "alpha", "beta" }; //$NON-NLS-1$ //$NON-NLS-2$
+
+	/**
+	 * The index of the next value to set.
+	 */
+	private int next;
+
+	/**
+	 * Creates the properties and registers the listeners.
+	 * 
+	 * @param blackhole
+	 *            the sink for the listeners' arguments
+	 */
+	@Setup
+	public void setUp(final Blackhole blackhole) {
+		text = new TextProperty("text", values[0]); //$NON-NLS-1$
+		changing = new TextProperty("changing", values[0]); //$NON-NLS-1$
+		for (int i = 0; i < listeners; i++) {
+			text.addValueChangeListener(new ValueChangeListener<String>() {
+				@Override
+				public void valueChanged(
+						AbstractProperty<? extends String> property,
+						String oldValue, String newValue) {
+					blackhole.consume(newValue);
+				}
+			});
+			changing.addChangeListener(new ChangeListener() {
+				@Override
+				public void stateChanged(ChangeEvent ce) {
+					blackhole.consume(ce);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Sets a new value, notifying the value listeners.
+	 */
+	@Benchmark
+	public void setValue() {
+		next ^= 1;
+		text.setValue(values[next]);
+	}
+
+	/**
+	 * Notifies the change listeners.
+	 */
+	@Benchmark
+	public void fireChangeEvent() {
+		changing.fireChangeEvent();
+	}
+}
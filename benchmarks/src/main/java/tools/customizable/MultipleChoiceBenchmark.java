@@ -0,0 +1,95 @@
+package tools.customizable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JComboBox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link MultipleChoiceProperty#updateEditor(JComboBox)} with large
+ * lists of choices. Each call follows a change of value, alternating between
+ * a choice near the start of the list and one near the end.
+ * 
+ * @author William Chargin
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class MultipleChoiceBenchmark {
+
+	/**
+	 * The number of choices.
+	 */
+	@Param({ "10", "1000", "100000" })
+	public int choices;
+
+	/**
+	 * The property.
+	 */
+	private MultipleChoiceProperty<String> property;
+
+	/**
+	 * The editor that is updated.
+	 */
+	private JComboBox editor;
+
+	/**
+	 * The choices that are selected in turn.
+	 */
+	private String[] selected;
+
+	/**
+	 * The index of the next choice to select.
+	 */
+	private int next;
+
+	/**
+	 * Creates the property and its editor.
+	 */
+	@Setup
+	public void setUp() {
+		List<String> values = new ArrayList<String>(choices);
+		for (int i = 0; i < choices; i++) {
+			values.add("choice " + i); //$NON-NLS-1$
+		}
+		property = new MultipleChoiceProperty<String>("choice", values, null); //$NON-NLS-1$
+		editor = property.getEditor();
+		selected = new String[] { values.get(1), values.get(choices - 2) };
+	}
+
+	/**
+	 * Releases the editor.
+	 */
+	@TearDown
+	public void tearDown() {
+		property.releaseAll();
+	}
+
+	/**
+	 * Changes the value and updates the editor to match.
+	 */
+	@Benchmark
+	public void updateEditor() {
+		next ^= 1;
+		property.value = selected[next];
+		property.updateEditor(editor);
+	}
+}
@@ -0,0 +1,109 @@
+package tools.customizable;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the construction of a {@link PropertyPanel}, and of a
+ * {@link VirtualPropertyPanel} for comparison, for sets of various sizes. The
+ * panels are built headless and never shown, so layout and painting are not
+ * included. Each panel is disposed of after it is built, so that the
+ * properties do not accumulate editors and viewers.
+ * 
+ * @author William Chargin
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PanelBenchmark {
+
+	/**
+	 * The number of properties.
+	 */
+	@Param({ "100", "1000", "10000" })
+	public int size;
+
+	/**
+	 * The properties shown in the panels.
+	 */
+	private PropertySet properties;
+
+	/**
+	 * Creates the properties, cycling through the common kinds.
+	 */
+	@Setup
+	public void setUp() {
+		properties = new PropertySet();
+		for (int i = 0; i < size; i++) {
+			String name = "property " + i; //$NON-NLS-1$
+			switch (i % 4) {
+			case 0:
+				properties.add(new TextProperty(name, name));
+				break;
+			case 1:
+				properties.add(new IntProperty(name, i));
+				break;
+			case 2:
+				properties.add(new TrueFalseProperty(name, Boolean.TRUE,
+						"yes", "no")); //$NON-NLS-1$ //$NON-NLS-2$
+				break;
+			default:
+				properties.add(new MultipleChoiceProperty<String>(name, Arrays
+						.asList("red", "green", "blue"), "red")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Builds a fixed panel for editing.
+	 * 
+	 * @return the panel
+	 */
+	@Benchmark
+	public PropertyPanel propertyPanel() {
+		PropertyPanel panel = new PropertyPanel(properties, true, false);
+		panel.dispose();
+		return panel;
+	}
+
+	/**
+	 * Builds a panel that can switch between editing and viewing.
+	 * 
+	 * @return the panel
+	 */
+	@Benchmark
+	public PropertyPanel changeablePropertyPanel() {
+		PropertyPanel panel = new PropertyPanel(properties, true, true);
+		panel.dispose();
+		return panel;
+	}
+
+	/**
+	 * Builds a virtual panel for editing.
+	 * 
+	 * @return the panel
+	 */
+	@Benchmark
+	public VirtualPropertyPanel virtualPropertyPanel() {
+		VirtualPropertyPanel panel = new VirtualPropertyPanel(properties, true);
+		panel.dispose();
+		return panel;
+	}
+}
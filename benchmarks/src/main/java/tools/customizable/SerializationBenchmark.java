@@ -0,0 +1,147 @@
+package tools.customizable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures round trips of a property set through Java serialization and
+ * through a {@link PropertySetCodec}.
+ * 
+ * @author William Chargin
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class SerializationBenchmark {
+
+	/**
+	 * The number of properties.
+	 */
+	@Param({ "10", "100", "1000" })
+	public int size;
+
+	/**
+	 * The properties written.
+	 */
+	private PropertySet properties;
+
+	/**
+	 * The properties into which the codec reads.
+	 */
+	private PropertySet copies;
+
+	/**
+	 * The codec.
+	 */
+	private final PropertySetCodec codec = new PropertySetCodec();
+
+	/**
+	 * The stream reused for writing.
+	 */
+	private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+	/**
+	 * Creates the properties, cycling through the common kinds.
+	 */
+	@Setup
+	public void setUp() {
+		properties = createProperties(size);
+		copies = createProperties(size);
+	}
+
+	/**
+	 * Creates a set of properties, cycling through the common kinds.
+	 * 
+	 * @param size
+	 *            the number of properties
+	 * @return the properties
+	 */
+	private static PropertySet createProperties(int size) {
+		PropertySet set = new PropertySet();
+		for (int i = 0; i < size; i++) {
+			String name = "property " + i; //$NON-NLS-1$
+			switch (i % 5) {
+			case 0:
+				set.add(new TextProperty(name, name));
+				break;
+			case 1:
+				set.add(new IntProperty(name, i));
+				break;
+			case 2:
+				set.add(new DoubleProperty(name, i / 3.0));
+				break;
+			case 3:
+				set.add(new TimeProperty(name, Time.fromSeconds(i)));
+				break;
+			default:
+				set.add(new MultipleChoiceProperty<String>(name, Arrays.asList(
+						"red", "green", "blue"), "green")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+				break;
+			}
+		}
+		return set;
+	}
+
+	/**
+	 * Writes and reads the properties with Java serialization.
+	 * 
+	 * @return the properties read
+	 * @throws IOException
+	 *             never
+	 * @throws ClassNotFoundException
+	 *             never
+	 */
+	@Benchmark
+	public Object serialization() throws IOException, ClassNotFoundException {
+		bytes.reset();
+		ObjectOutputStream oos = new ObjectOutputStream(bytes);
+		oos.writeObject(properties);
+		oos.close();
+		ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(
+				bytes.toByteArray()));
+		try {
+			return ois.readObject();
+		} finally {
+			ois.close();
+		}
+	}
+
+	/**
+	 * Writes the values of the properties with the codec, and reads them into
+	 * another set of properties. After the first read the values are equal,
+	 * so this measures decoding rather than the listeners of the copies.
+	 * 
+	 * @return the number of values read
+	 * @throws IOException
+	 *             never
+	 */
+	@Benchmark
+	public int codec() throws IOException {
+		bytes.reset();
+		codec.write(properties, Channels.newChannel(bytes));
+		return codec.read(copies, Channels.newChannel(new ByteArrayInputStream(
+				bytes.toByteArray())));
+	}
+}
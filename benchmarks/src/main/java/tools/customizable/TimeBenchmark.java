@@ -0,0 +1,61 @@
+package tools.customizable;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the conversions of {@link Time}.
+ * 
+ * @author William Chargin
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimeBenchmark {
+
+	/**
+	 * The times converted, with one- and two-digit hours.
+	 */
+	private final Time[] times = { new Time(1, 2, 3), new Time(12, 34, 56),
+			new Time(0, 0, 0), new Time(99, 59, 59) };
+
+	/**
+	 * The index of the next time to convert.
+	 */
+	private int next;
+
+	/**
+	 * Converts a time to a string.
+	 * 
+	 * @return the string
+	 */
+	@Benchmark
+	public String toStringTime() {
+		next = (next + 1) & 3;
+		return times[next].toString();
+	}
+
+	/**
+	 * Converts a time to seconds and back.
+	 * 
+	 * @return the time
+	 */
+	@Benchmark
+	public Time roundTripSeconds() {
+		next = (next + 1) & 3;
+		return Time.fromSeconds(times[next].getTotalSeconds());
+	}
+}
@@ -0,0 +1,522 @@
+package tools.customizable;
+
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.JCheckBox;
+import javax.swing.JList;
+import javax.swing.JTextField;
+import javax.swing.ListCellRenderer;
+import javax.swing.SwingUtilities;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.PlainDocument;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Checks that hot paths allocate no more than their budgets. Each path is
+ * warmed up, so that it is compiled, and is then run many times while the
+ * bytes allocated by the current thread are counted. A change that adds an
+ * allocation to one of these paths makes its test fail; if the allocation is
+ * intended, raise the budget.
+ * <p>
+ * Paths that update Swing components run on the event dispatch thread, with
+ * editors that report that they are showing (so that the tests can run
+ * headless). Their budgets are found by making the same calls on bare
+ * components, so that only the allocations of the properties themselves
+ * count against them, give or take {@link #SWING_SLACK}.
+ * 
+ * @author William Chargin
+ * 
+ */
+public class AllocationTest {
+
+	/**
+	 * The number of calls made to warm up a path.
+	 */
+	private static final int WARMUP_CALLS = 50000;
+
+	/**
+	 * The number of calls over which allocations are counted.
+	 */
+	private static final int CALLS = 100000;
+
+	/**
+	 * The number of times the calls are counted. The lowest count is used, so
+	 * that a late compilation does not fail the test.
+	 */
+	private static final int ROUNDS = 5;
+
+	/**
+	 * The size of a {@link Time}, in bytes. This allows for object headers of
+	 * up to 16 bytes.
+	 */
+	private static final long TIME_BYTES = 32;
+
+	/**
+	 * The allowance, in bytes, for Swing allocating more on a property's path
+	 * than on the bare components it is compared with. The two paths are
+	 * compiled differently, so a few of Swing's own objects may escape on one
+	 * and not the other.
+	 */
+	private static final long SWING_SLACK = 256;
+
+	/**
+	 * The bean that counts allocated bytes.
+	 */
+	private static com.sun.management.ThreadMXBean threads;
+
+	/**
+	 * A sink for results, so that the paths are not optimized away.
+	 */
+	private static volatile Object sink;
+
+	/**
+	 * Finds the bean that counts allocated bytes.
+	 */
+	@BeforeClass
+	public static void setUpClass() {
+		threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		assertTrue("allocation counting is not supported", //$NON-NLS-1$
+				threads.isThreadAllocatedMemorySupported());
+		threads.setThreadAllocatedMemoryEnabled(true);
+	}
+
+	/**
+	 * Counts the bytes allocated by each call of the given path.
+	 * 
+	 * @param path
+	 *            the path, which is run once for each call
+	 * @return the average number of bytes allocated by a call
+	 */
+	private static long bytesPerCall(Runnable path) {
+		for (int i = 0; i < WARMUP_CALLS; i++) {
+			path.run();
+		}
+		long id = Thread.currentThread().getId();
+		long least = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			long before = threads.getThreadAllocatedBytes(id);
+			for (int i = 0; i < CALLS; i++) {
+				path.run();
+			}
+			long after = threads.getThreadAllocatedBytes(id);
+			least = Math.min(least, after - before);
+		}
+		return least / CALLS;
+	}
+
+	/**
+	 * Checks that the given path allocates no more than the given number of
+	 * bytes per call.
+	 * 
+	 * @param name
+	 *            the name of the path, for the failure message
+	 * @param budget
+	 *            the number of bytes each call may allocate
+	 * @param path
+	 *            the path
+	 */
+	private static void assertBudget(String name, long budget, Runnable path) {
+		long bytes = bytesPerCall(path);
+		assertTrue(name + " allocated " + bytes + " bytes per call; budget is " //$NON-NLS-1$ //$NON-NLS-2$
+				+ budget, bytes <= budget);
+	}
+
+	/**
+	 * Runs the given test on the event dispatch thread, and rethrows its
+	 * failure, if any.
+	 * 
+	 * @param test
+	 *            the test
+	 * @throws Throwable
+	 *             if the test fails
+	 */
+	private static void onEventThread(final Runnable test) throws Throwable {
+		final Throwable[] failure = new Throwable[1];
+		SwingUtilities.invokeAndWait(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					test.run();
+				} catch (Throwable t) {
+					failure[0] = t;
+				}
+			}
+		});
+		if (failure[0] != null) {
+			throw failure[0];
+		}
+	}
+
+	/**
+	 * A check box that reports that it is showing, so that it is updated as
+	 * if it were on the screen.
+	 * 
+	 * @author William Chargin
+	 * 
+	 */
+	private static class ShowingCheckBox extends JCheckBox {
+
+		/**
+		 * 
+		 */
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public boolean isShowing() {
+			return true;
+		}
+	}
+
+	/**
+	 * A text field that reports that it is showing, so that it is updated as
+	 * if it were on the screen.
+	 * 
+	 * @author William Chargin
+	 * 
+	 */
+	private static class ShowingTextField extends JTextField {
+
+		/**
+		 * 
+		 */
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * Creates the text field.
+		 * 
+		 * @param document
+		 *            the document to edit
+		 */
+		private ShowingTextField(Document document) {
+			super(document, null, 20);
+		}
+
+		@Override
+		public boolean isShowing() {
+			return true;
+		}
+	}
+
+	/**
+	 * Checks that setting an int allocates nothing.
+	 */
+	@Test
+	public void setInt() {
+		final IntProperty property = new IntProperty("int", 0); //$NON-NLS-1$
+		assertBudget("IntProperty.setInt", 0, new Runnable() { //$NON-NLS-1$
+					private int next;
+
+					@Override
+					public void run() {
+						property.setInt(next++);
+					}
+				});
+	}
+
+	/**
+	 * Checks that setting an int allocates nothing when an unboxed listener
+	 * is registered.
+	 */
+	@Test
+	public void setIntWithListeners() {
+		final IntProperty property = new IntProperty("int", 0); //$NON-NLS-1$
+		property.addIntChangeListener(new IntChangeListener() {
+			@Override
+			public void intChanged(IntProperty source, int oldValue,
+					int newValue) {
+				sink = source;
+			}
+		});
+		assertBudget("IntProperty.setInt with listener", 0, new Runnable() { //$NON-NLS-1$
+					private int next;
+
+					@Override
+					public void run() {
+						property.setInt(next++);
+					}
+				});
+	}
+
+	/**
+	 * Checks that setting a long allocates nothing.
+	 */
+	@Test
+	public void setLong() {
+		final LongProperty property = new LongProperty("long", 0); //$NON-NLS-1$
+		assertBudget("LongProperty.setLong", 0, new Runnable() { //$NON-NLS-1$
+					private long next;
+
+					@Override
+					public void run() {
+						property.setLong(next++);
+					}
+				});
+	}
+
+	/**
+	 * Checks that setting a double allocates nothing.
+	 */
+	@Test
+	public void setDouble() {
+		final DoubleProperty property = new DoubleProperty("double", 0); //$NON-NLS-1$
+		assertBudget("DoubleProperty.setDouble", 0, new Runnable() { //$NON-NLS-1$
+					private double next;
+
+					@Override
+					public void run() {
+						property.setDouble(next++);
+					}
+				});
+	}
+
+	/**
+	 * Checks that setting a boolean allocates nothing.
+	 */
+	@Test
+	public void setBoolean() {
+		final TrueFalseProperty property = new TrueFalseProperty("boolean", //$NON-NLS-1$
+				Boolean.FALSE, "yes", "no"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertBudget("TrueFalseProperty.setValue", 0, new Runnable() { //$NON-NLS-1$
+					private boolean next;
+
+					@Override
+					public void run() {
+						next = !next;
+						property.setValue(Boolean.valueOf(next));
+					}
+				});
+	}
+
+	/**
+	 * Checks that setting a boolean with a showing editor allocates nothing
+	 * beyond what the check box itself allocates.
+	 * 
+	 * @throws Throwable
+	 *             if the test fails
+	 */
+	@Test
+	public void setBooleanWithEditor() throws Throwable {
+		onEventThread(new Runnable() {
+			@Override
+			public void run() {
+				final TrueFalseProperty property = new TrueFalseProperty(
+						"boolean", Boolean.FALSE, "yes", "no") { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					protected JCheckBox createEditor() {
+						return new ShowingCheckBox();
+					}
+				};
+				property.getEditor();
+				final JCheckBox bare = new ShowingCheckBox();
+				long swing = bytesPerCall(new Runnable() {
+					private boolean next;
+
+					@Override
+					public void run() {
+						next = !next;
+						bare.setSelected(next);
+						bare.setToolTipText(next ? "yes" : "no"); //$NON-NLS-1$ //$NON-NLS-2$
+						bare.setEnabled(true);
+					}
+				});
+				assertBudget("TrueFalseProperty.setValue with editor", //$NON-NLS-1$
+						swing + SWING_SLACK,
+						new Runnable() {
+							private boolean next;
+
+							@Override
+							public void run() {
+								next = !next;
+								property.setValue(Boolean.valueOf(next));
+							}
+						});
+			}
+		});
+	}
+
+	/**
+	 * Checks that setting text allocates nothing when the property has no
+	 * components.
+	 */
+	@Test
+	public void setText() {
+		final TextProperty property = new TextProperty("text", new String()); //$NON-NLS-1$
+		final String[] values = { "alpha", "beta" }; //$NON-NLS-1$ //$NON-NLS-2$
+		assertBudget("TextProperty.setValue", 0, new Runnable() { //$NON-NLS-1$
+					private int next;
+
+					@Override
+					public void run() {
+						next ^= 1;
+						property.setValue(values[next]);
+					}
+				});
+	}
+
+	/**
+	 * Checks that setting text with a showing editor allocates nothing beyond
+	 * what replacing the text of a document allocates. The text is long
+	 * enough that building it as a string would exceed the budget.
+	 * 
+	 * @throws Throwable
+	 *             if the test fails
+	 */
+	@Test
+	public void setTextWithEditor() throws Throwable {
+		onEventThread(new Runnable() {
+			@Override
+			public void run() {
+				char[] text = new char[512];
+				Arrays.fill(text, 'a');
+				String alpha = new String(text);
+				Arrays.fill(text, 'b');
+				final String[] values = { alpha, new String(text) };
+				final TextProperty property = new TextProperty("text", //$NON-NLS-1$
+						new String()) {
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					protected JTextField createEditor() {
+						JTextField txt = new ShowingTextField(getDocument());
+						addCommitTriggers(txt);
+						return txt;
+					}
+				};
+				property.getEditor();
+				final AbstractDocument bare = new PlainDocument();
+				new ShowingTextField(bare);
+				long swing = bytesPerCall(new Runnable() {
+					private int next;
+
+					@Override
+					public void run() {
+						next ^= 1;
+						try {
+							bare.replace(0, bare.getLength(), values[next],
+									null);
+						} catch (BadLocationException ble) {
+							throw new IllegalStateException(ble);
+						}
+					}
+				});
+				assertBudget("TextProperty.setValue with editor", //$NON-NLS-1$
+						swing + SWING_SLACK,
+						new Runnable() {
+							private int next;
+
+							@Override
+							public void run() {
+								next ^= 1;
+								property.setValue(values[next]);
+							}
+						});
+			}
+		});
+	}
+
+	/**
+	 * Checks that notifying change listeners allocates nothing, since the
+	 * event is reused.
+	 */
+	@Test
+	public void fireChangeEvent() {
+		final TextProperty property = new TextProperty("text", new String()); //$NON-NLS-1$
+		for (int i = 0; i < 10; i++) {
+			property.addChangeListener(new ChangeListener() {
+				@Override
+				public void stateChanged(ChangeEvent ce) {
+					sink = ce;
+				}
+			});
+		}
+		assertBudget("AbstractProperty.fireChangeEvent", 0, new Runnable() { //$NON-NLS-1$
+					@Override
+					public void run() {
+						property.fireChangeEvent();
+					}
+				});
+	}
+
+	/**
+	 * Checks that converting a time to seconds allocates nothing.
+	 */
+	@Test
+	public void getTotalSeconds() {
+		final Time time = new Time(12, 34, 56);
+		assertBudget("Time.getTotalSeconds", 0, new Runnable() { //$NON-NLS-1$
+					@Override
+					public void run() {
+						sink = Integer.valueOf(time.getTotalSeconds() & 0x7F);
+					}
+				});
+	}
+
+	/**
+	 * Checks that converting seconds to a time allocates only the time.
+	 */
+	@Test
+	public void fromSeconds() {
+		assertBudget("Time.fromSeconds", TIME_BYTES, new Runnable() { //$NON-NLS-1$
+					private int next;
+
+					@Override
+					public void run() {
+						sink = Time.fromSeconds(next++);
+					}
+				});
+	}
+
+	/**
+	 * Checks that the enum renderer allocates nothing but its text. The size
+	 * of the text depends on how the JVM stores strings, so the budget is
+	 * found by building the same text directly and rendering it with a
+	 * default renderer.
+	 */
+	@Test
+	public void renderEnum() {
+		// The library predates generic Swing, so its renderer is raw.
+		@SuppressWarnings("unchecked")
+		final ListCellRenderer<Object> renderer = MultipleChoiceProperty
+				.createEnumRenderer();
+		final JList<Object> list = new JList<Object>();
+		final Thread.State[] values = Thread.State.values();
+		final DefaultListCellRenderer bare = new DefaultListCellRenderer();
+		final JList<Object> bareList = new JList<Object>();
+		long text = bytesPerCall(new Runnable() {
+			private int next;
+
+			@Override
+			public void run() {
+				next = (next + 1) % values.length;
+				String string = values[next].toString();
+				sink = bare.getListCellRendererComponent(bareList, Character
+						.toString(Character.toUpperCase(string.charAt(0)))
+						.concat(string.substring(1).toLowerCase()), next,
+						false, false);
+			}
+		});
+		assertBudget("enum renderer", text, new Runnable() { //$NON-NLS-1$
+					private int next;
+
+					@Override
+					public void run() {
+						next = (next + 1) % values.length;
+						sink = renderer.getListCellRendererComponent(list,
+								values[next], next, false, false);
+					}
+				});
+	}
+}
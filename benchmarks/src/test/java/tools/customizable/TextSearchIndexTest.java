@@ -0,0 +1,182 @@
+package tools.customizable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.PlainDocument;
+
+import org.junit.Test;
+
+/**
+ * Checks that {@link TextSearchIndex} finds the same matches as a plain
+ * search, and that it skips the lines that cannot match.
+ * 
+ * @author William Chargin
+ * 
+ */
+public class TextSearchIndexTest {
+
+	/**
+	 * The number of lines in the log searched.
+	 */
+	private static final int LINES = 10000;
+
+	/**
+	 * Builds a document that looks like a log, with lines of about a hundred
+	 * characters.
+	 * 
+	 * @return the document
+	 * @throws BadLocationException
+	 *             never
+	 */
+	private static Document createLog() throws BadLocationException {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < LINES; i++) {
+			sb.append("2026-10-17 12:").append(i % 60).append(':') //$NON-NLS-1$
+					.append(i % 59).append(" INFO worker-").append(i % 8) //$NON-NLS-1$
+					.append(" served request ").append(i * 7919) //$NON-NLS-1$
+					.append(" for client ").append(i % 97) //$NON-NLS-1$
+					.append(" in ").append(i % 13).append(" ms from the cache\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		PlainDocument document = new PlainDocument();
+		document.insertString(0, sb.toString(), null);
+		return document;
+	}
+
+	/**
+	 * Finds the given text with a plain search.
+	 * 
+	 * @param text
+	 *            the text searched
+	 * @param query
+	 *            the text to find
+	 * @param from
+	 *            the first offset at which a match may start
+	 * @param to
+	 *            the offset before which a match must start
+	 * @return the offset of the match, or {@code -1} if there is none
+	 */
+	private static int naiveFind(String text, String query, int from, int to) {
+		int length = query.length();
+		for (int at = Math.max(from, 0); at < Math.min(to, text.length()); at++) {
+			if (at + length <= text.length()
+					&& text.substring(at, at + length).equalsIgnoreCase(query)
+					&& text.indexOf('\n', at) >= at + length - 1) {
+				return at;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Checks that a rare query is compared only against the lines that
+	 * contain it.
+	 * 
+	 * @throws BadLocationException
+	 *             never
+	 */
+	@Test
+	public void skipsLines() throws BadLocationException {
+		Document document = createLog();
+		Element root = document.getDefaultRootElement();
+		document.insertString(root.getElement(7000).getStartOffset(),
+				"Needle ", null); //$NON-NLS-1$
+		document.insertString(root.getElement(5000).getStartOffset(),
+				"Needle ", null); //$NON-NLS-1$
+		String text = document.getText(0, document.getLength());
+		int first = text.indexOf("Needle"); //$NON-NLS-1$
+		int second = text.indexOf("Needle", first + 1); //$NON-NLS-1$
+		assertEquals(5000, root.getElementIndex(first));
+		assertEquals(7000, root.getElementIndex(second));
+		TextSearchIndex index = new TextSearchIndex(document);
+		assertEquals(first, index.find("NEEDLE", 0, Integer.MAX_VALUE)); //$NON-NLS-1$
+		assertTrue("compared " + index.scanned + " lines", index.scanned <= 2); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(second, index.find("needle", first + 1, Integer.MAX_VALUE)); //$NON-NLS-1$
+		assertTrue("compared " + index.scanned + " lines", index.scanned <= 2); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(-1, index.find("needle", second + 1, Integer.MAX_VALUE)); //$NON-NLS-1$
+		assertTrue("compared " + index.scanned + " lines", index.scanned <= 2); //$NON-NLS-1$ //$NON-NLS-2$
+
+		// A query made of common trigrams still skips most lines.
+		assertEquals(naiveFind(text, "request 7919 ", 0, text.length()), //$NON-NLS-1$
+				index.find("request 7919 ", 0, Integer.MAX_VALUE)); //$NON-NLS-1$
+		assertTrue("compared " + index.scanned + " lines", //$NON-NLS-1$ //$NON-NLS-2$
+				index.scanned < LINES / 100);
+		index.dispose();
+	}
+
+	/**
+	 * Checks that the index finds the same matches as a plain search while
+	 * the document is edited.
+	 * 
+	 * @throws BadLocationException
+	 *             never
+	 */
+	@Test
+	public void matchesPlainSearch() throws BadLocationException {
+		Random random = new Random(17);
+		String alphabet = "abAB \n"; //$NON-NLS-1$
+		PlainDocument document = new PlainDocument();
+		TextSearchIndex index = new TextSearchIndex(document);
+		for (int edit = 0; edit < 2000; edit++) {
+			int length = document.getLength();
+			if (length > 0 && random.nextInt(3) == 0) {
+				int offset = random.nextInt(length);
+				document.remove(offset,
+						random.nextInt(Math.min(length - offset, 20)) + 1);
+			} else {
+				StringBuilder sb = new StringBuilder();
+				for (int i = random.nextInt(30); i >= 0; i--) {
+					sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+				}
+				document.insertString(random.nextInt(length + 1),
+						sb.toString(), null);
+			}
+			String text = document.getText(0, document.getLength());
+			StringBuilder query = new StringBuilder();
+			for (int i = random.nextInt(5); i >= 0; i--) {
+				query.append(alphabet.charAt(random.nextInt(4)));
+			}
+			int from = random.nextInt(text.length() + 2) - 1;
+			int to = from + random.nextInt(text.length() + 2);
+			assertEquals(naiveFind(text, query.toString(), from, to),
+					index.find(query.toString(), from, to));
+			assertEquals(naiveFind(text, query.toString(), 0, text.length()),
+					index.find(query.toString(), 0, Integer.MAX_VALUE));
+		}
+		index.dispose();
+	}
+
+	/**
+	 * Checks that the index still finds matches after typing into one line
+	 * has discarded enough postings that the index is rebuilt.
+	 * 
+	 * @throws BadLocationException
+	 *             never
+	 */
+	@Test
+	public void typingIntoLine() throws BadLocationException {
+		Document document = createLog();
+		TextSearchIndex index = new TextSearchIndex(document);
+		int offset = document.getDefaultRootElement().getElement(LINES / 2)
+				.getStartOffset();
+		String typed = "The quick brown fox jumps over the lazy dog. "; //$NON-NLS-1$
+		for (int i = 0; i < 8000; i++) {
+			document.insertString(offset + i,
+					String.valueOf(typed.charAt(i % typed.length())), null);
+		}
+		String text = document.getText(0, document.getLength());
+		String[] queries = { "lazy dog. the", "Fox", "served request 39595", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				"cache\n2026", "zz" }; //$NON-NLS-1$ //$NON-NLS-2$
+		for (int i = 0; i < queries.length; i++) {
+			assertEquals(queries[i],
+					naiveFind(text, queries[i], 0, text.length()),
+					index.find(queries[i], 0, Integer.MAX_VALUE));
+		}
+		index.dispose();
+	}
+}
@@ -1,13 +1,22 @@
 package tools.customizable;
 
 import java.io.Serializable;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
-import javax.swing.event.EventListenerList;
 
 /**
  * A property with a name and a value.
+ * <p>
+ * The value may be read and set from any thread. Each successful
+ * {@link #setValue(Object)} atomically replaces the value, so that concurrent
+ * setters observe distinct transitions, and value listeners are notified on
+ * the thread that set the value. Batches, however, must be opened and closed
+ * on a single thread. The state of a batch is guarded by the lock of the
+ * property, so that notifications deferred by other threads while it is open
+ * are delivered when it is committed.
  * 
  * @author William Chargin
  * 
@@ -35,12 +44,123 @@ public abstract class AbstractProperty<T> implements Serializable {
 	/**
 	 * The current value of this property.
 	 */
-	protected T value;
+	protected volatile T value;
 
 	/**
-	 * The list of listeners on this property.
+	 * Compares and sets {@link #value}.
 	 */
-	private transient EventListenerList listenerList = new EventListenerList();
+	@SuppressWarnings("rawtypes")
+	private static final AtomicReferenceFieldUpdater<AbstractProperty, Object> VALUE_UPDATER = AtomicReferenceFieldUpdater
+			.newUpdater(AbstractProperty.class, Object.class, "value"); //$NON-NLS-1$
+
+	/**
+	 * An empty array of listeners, shared by all properties with no listeners.
+	 */
+	private static final ChangeListener[] NO_LISTENERS = new ChangeListener[0];
+
+	/**
+	 * A change listener that forwards events to a weakly referenced listener,
+	 * and unregisters itself once that listener has been collected.
+	 * 
+	 * @author William Chargin
+	 * 
+	 */
+	private static final class WeakChangeListener implements ChangeListener {
+
+		/**
+		 * The listener to which events are forwarded.
+		 */
+		private final WeakReference<ChangeListener> delegate;
+
+		/**
+		 * Creates the listener.
+		 * 
+		 * @param delegate
+		 *            the listener to which events are forwarded
+		 */
+		private WeakChangeListener(ChangeListener delegate) {
+			this.delegate = new WeakReference<ChangeListener>(delegate);
+		}
+
+		@Override
+		public void stateChanged(ChangeEvent ce) {
+			ChangeListener cl = delegate.get();
+			if (cl == null) {
+				((AbstractProperty<?>) ce.getSource())
+						.removeChangeListener(this);
+			} else {
+				cl.stateChanged(ce);
+			}
+		}
+	}
+
+	/**
+	 * The listeners on this property. The array is never modified once
+	 * published; adding or removing a listener replaces it with a copy, so it
+	 * may be iterated without locking.
+	 */
+	private transient volatile ChangeListener[] listeners = NO_LISTENERS;
+
+	/**
+	 * The event delivered to listeners. It carries no state other than its
+	 * source, so it is created once and reused.
+	 */
+	private transient ChangeEvent changeEvent;
+
+	/**
+	 * An empty array of value listeners, shared by all properties with no value
+	 * listeners.
+	 */
+	private static final ValueChangeListener<?>[] NO_VALUE_LISTENERS = new ValueChangeListener<?>[0];
+
+	/**
+	 * The value listeners on this property, replaced on modification in the
+	 * same way as {@link #listeners}.
+	 */
+	private transient volatile ValueChangeListener<?>[] valueListeners = NO_VALUE_LISTENERS;
+
+	/**
+	 * An empty array of name listeners, shared by all properties with no name
+	 * listeners.
+	 */
+	private static final NameChangeListener[] NO_NAME_LISTENERS = new NameChangeListener[0];
+
+	/**
+	 * The name listeners on this property, replaced on modification in the same
+	 * way as {@link #listeners}.
+	 */
+	private transient volatile NameChangeListener[] nameListeners = NO_NAME_LISTENERS;
+
+	/**
+	 * The separate metrics kept for this property, if it is
+	 * {@linkplain PropertyMetrics#watch(AbstractProperty) watched}.
+	 */
+	transient volatile PropertyMetrics metrics;
+
+	/**
+	 * The number of batches currently open on this property. This is only
+	 * modified while holding the lock of this property, but may be read
+	 * without it.
+	 */
+	private transient volatile int batchDepth;
+
+	/**
+	 * Whether a change event was suppressed during the current batch. This is
+	 * guarded by the lock of this property.
+	 */
+	private transient boolean changePending;
+
+	/**
+	 * Whether the value changed during the current batch. This is guarded by
+	 * the lock of this property.
+	 */
+	private transient boolean valuePending;
+
+	/**
+	 * The value this property had when it first changed during the current
+	 * batch. This is guarded by the lock of this property.
+	 */
+	private transient T batchOldValue;
 
 	/**
 	 * Creates the property with a blank name (with {@link String#String()}) and
@@ -73,26 +193,292 @@ public abstract class AbstractProperty<T> implements Serializable {
 	 * @param cl
 	 *            the listener to add
 	 */
-	public void addChangeListener(ChangeListener cl) {
-		if (listenerList == null) {
-			listenerList = new EventListenerList();
+	public synchronized void addChangeListener(ChangeListener cl) {
+		if (cl == null) {
+			return;
+		}
+		ChangeListener[] old = getListenerArray();
+		ChangeListener[] updated = new ChangeListener[old.length + 1];
+		int n = 0;
+		for (ChangeListener l : old) {
+			// Prune weak listeners whose targets are gone.
+			if (!(l instanceof WeakChangeListener)
+					|| ((WeakChangeListener) l).delegate.get() != null) {
+				updated[n++] = l;
+			}
+		}
+		updated[n++] = cl;
+		if (n < updated.length) {
+			ChangeListener[] trimmed = new ChangeListener[n];
+			System.arraycopy(updated, 0, trimmed, 0, n);
+			updated = trimmed;
 		}
-		listenerList.add(ChangeListener.class, cl);
+		listeners = updated;
 	}
 
 	/**
-	 * Fires {@link ChangeEvents} to all registered listeners.
+	 * Adds the given listener to the list of listeners, holding it only
+	 * weakly. The listener is notified like one added with
+	 * {@link #addChangeListener(ChangeListener)}, but this property does not
+	 * keep it from being garbage collected; once it is, it is unregistered
+	 * automatically. This suits short-lived views of long-lived properties.
+	 * The caller must hold a strong reference to the listener for as long as
+	 * it should be notified (an anonymous listener registered this way may be
+	 * collected at once).
+	 * 
+	 * @param cl
+	 *            the listener to add
+	 * @see #removeChangeListener(ChangeListener)
+	 */
+	public void addWeakChangeListener(ChangeListener cl) {
+		if (cl == null) {
+			return;
+		}
+		addChangeListener(new WeakChangeListener(cl));
+	}
+
+	/**
+	 * Fires {@link ChangeEvent}s to all registered listeners. As with Swing's
+	 * own event sources, the most recently added listener is notified first.
 	 */
 	protected void fireChangeEvent() {
-		if (listenerList == null) {
-			listenerList = new EventListenerList();
+		if (batchDepth > 0) {
+			synchronized (this) {
+				if (batchDepth > 0) {
+					changePending = true;
+					return;
+				}
+			}
+		}
+		ChangeListener[] ls = getListenerArray();
+		if (ls.length == 0) {
+			return;
+		}
+		ChangeEvent ce = changeEvent;
+		if (ce == null) {
+			ce = changeEvent = new ChangeEvent(this);
+		}
+		if (isTiming()) {
+			if (PropertyMetrics.isEnabled()) {
+				PropertyMetrics.eventFired(this, ls.length);
+			}
+			for (int i = ls.length - 1; i >= 0; i--) {
+				long start = System.nanoTime();
+				ls[i].stateChanged(ce);
+				timed(ls[i], System.nanoTime() - start);
+			}
+			return;
+		}
+		for (int i = ls.length - 1; i >= 0; i--) {
+			ls[i].stateChanged(ce);
+		}
+	}
+
+	/**
+	 * Determines whether any change listeners are registered.
+	 * 
+	 * @return {@code true} if at least one change listener is registered
+	 */
+	protected boolean hasChangeListeners() {
+		return getListenerArray().length > 0;
+	}
+
+	/**
+	 * Gets the current listener array, which is empty (rather than
+	 * {@code null}) after deserialization.
+	 * 
+	 * @return the listener array, which must not be modified
+	 */
+	private ChangeListener[] getListenerArray() {
+		ChangeListener[] ls = listeners;
+		return ls == null ? NO_LISTENERS : ls;
+	}
+
+	/**
+	 * Gets a copy of the listeners registered on this property.
+	 * 
+	 * @return the listeners, in the order they were added
+	 */
+	public ChangeListener[] getChangeListeners() {
+		return getListenerArray().clone();
+	}
+
+	/**
+	 * Adds the given listener to the list of value listeners. The listener's
+	 * {@link ValueChangeListener#valueChanged(AbstractProperty, Object, Object)
+	 * valueChanged} method will be called after the value changes to one that
+	 * is not equal to the previous value.
+	 * 
+	 * @param vcl
+	 *            the listener to add
+	 */
+	public synchronized void addValueChangeListener(
+			ValueChangeListener<? super T> vcl) {
+		if (vcl == null) {
+			return;
+		}
+		ValueChangeListener<?>[] old = getValueListenerArray();
+		ValueChangeListener<?>[] updated = new ValueChangeListener<?>[old.length + 1];
+		System.arraycopy(old, 0, updated, 0, old.length);
+		updated[old.length] = vcl;
+		valueListeners = updated;
+	}
+
+	/**
+	 * Removes the given listener from the list of value listeners.
+	 * 
+	 * @param vcl
+	 *            the listener to remove
+	 */
+	public synchronized void removeValueChangeListener(
+			ValueChangeListener<? super T> vcl) {
+		ValueChangeListener<?>[] old = getValueListenerArray();
+		for (int i = old.length - 1; i >= 0; i--) {
+			if (old[i] == vcl) {
+				ValueChangeListener<?>[] updated = new ValueChangeListener<?>[old.length - 1];
+				System.arraycopy(old, 0, updated, 0, i);
+				System.arraycopy(old, i + 1, updated, i, old.length - i - 1);
+				valueListeners = updated;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Notifies all value listeners that the value has changed. During a batch,
+	 * the notification is deferred; listeners are then told the value from
+	 * before the batch and the value after it, and are not notified at all if
+	 * the two are equal.
+	 * 
+	 * @param oldValue
+	 *            the previous value
+	 * @param newValue
+	 *            the new value
+	 */
+	@SuppressWarnings("unchecked")
+	protected void fireValueChange(T oldValue, T newValue) {
+		if (batchDepth > 0) {
+			synchronized (this) {
+				if (batchDepth > 0) {
+					if (!valuePending) {
+						valuePending = true;
+						batchOldValue = oldValue;
+					}
+					return;
+				}
+			}
 		}
-		if (listenerList.getListenerCount() > 0) {
-			for (ChangeListener cl : listenerList
-					.getListeners(ChangeListener.class)) {
-				cl.stateChanged(new ChangeEvent(this));
+		ValueChangeListener<?>[] ls = getValueListenerArray();
+		if (ls.length > 0 && isTiming()) {
+			if (PropertyMetrics.isEnabled()) {
+				PropertyMetrics.eventFired(this, ls.length);
+			}
+			for (int i = ls.length - 1; i >= 0; i--) {
+				long start = System.nanoTime();
+				((ValueChangeListener<? super T>) ls[i]).valueChanged(this,
+						oldValue, newValue);
+				timed(ls[i], System.nanoTime() - start);
 			}
+			return;
+		}
+		for (int i = ls.length - 1; i >= 0; i--) {
+			((ValueChangeListener<? super T>) ls[i]).valueChanged(this,
+					oldValue, newValue);
+		}
+	}
+
+	/**
+	 * Determines whether calls to listeners, editors, and viewers are being
+	 * timed, for {@link PropertyMetrics} or the {@link ListenerWatchdog}.
+	 * 
+	 * @return {@code true} if calls should be timed
+	 */
+	static boolean isTiming() {
+		return PropertyMetrics.isEnabled() || ListenerWatchdog.isEnabled();
+	}
+
+	/**
+	 * Records a timed call to a listener of this property.
+	 * 
+	 * @param listener
+	 *            the listener that was called
+	 * @param nanos
+	 *            the duration of the call, in nanoseconds
+	 */
+	void timed(Object listener, long nanos) {
+		if (PropertyMetrics.isEnabled()) {
+			PropertyMetrics.listenerCalled(this, listener, nanos);
 		}
+		ListenerWatchdog.check(this, listener, nanos);
+	}
+
+	/**
+	 * Determines whether any value listeners are registered. Subclasses that
+	 * store their value unboxed can use this to avoid boxing values that no
+	 * one will receive.
+	 * 
+	 * @return {@code true} if at least one value listener is registered
+	 */
+	protected boolean hasValueChangeListeners() {
+		return getValueListenerArray().length > 0;
+	}
+
+	/**
+	 * Gets the current value listener array, which is empty (rather than
+	 * {@code null}) after deserialization.
+	 * 
+	 * @return the value listener array, which must not be modified
+	 */
+	private ValueChangeListener<?>[] getValueListenerArray() {
+		ValueChangeListener<?>[] ls = valueListeners;
+		return ls == null ? NO_VALUE_LISTENERS : ls;
+	}
+
+	/**
+	 * Adds the given listener to the list of name listeners.
+	 * 
+	 * @param ncl
+	 *            the listener to add
+	 */
+	public synchronized void addNameChangeListener(NameChangeListener ncl) {
+		if (ncl == null) {
+			return;
+		}
+		NameChangeListener[] old = getNameListenerArray();
+		NameChangeListener[] updated = new NameChangeListener[old.length + 1];
+		System.arraycopy(old, 0, updated, 0, old.length);
+		updated[old.length] = ncl;
+		nameListeners = updated;
+	}
+
+	/**
+	 * Removes the given listener from the list of name listeners.
+	 * 
+	 * @param ncl
+	 *            the listener to remove
+	 */
+	public synchronized void removeNameChangeListener(NameChangeListener ncl) {
+		NameChangeListener[] old = getNameListenerArray();
+		for (int i = old.length - 1; i >= 0; i--) {
+			if (old[i] == ncl) {
+				NameChangeListener[] updated = new NameChangeListener[old.length - 1];
+				System.arraycopy(old, 0, updated, 0, i);
+				System.arraycopy(old, i + 1, updated, i, old.length - i - 1);
+				nameListeners = updated;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Gets the current name listener array, which is empty (rather than
+	 * {@code null}) after deserialization.
+	 * 
+	 * @return the name listener array, which must not be modified
+	 */
+	private NameChangeListener[] getNameListenerArray() {
+		NameChangeListener[] ls = nameListeners;
+		return ls == null ? NO_NAME_LISTENERS : ls;
 	}
 
 	/**
@@ -117,16 +503,25 @@ public abstract class AbstractProperty<T> implements Serializable {
 	 * Removes the given listener from the list of listeners. The listener's
 	 * {@link ChangeListener#stateChanged(javax.swing.event.ChangeEvent)
 	 * stateChanged} method will no longer be called when the key, value, or
-	 * editability changes.
+	 * editability changes. This also removes listeners added with
+	 * {@link #addWeakChangeListener(ChangeListener)}.
 	 * 
 	 * @param cl
 	 *            the listener to remove
 	 */
-	public void removeChangeListener(ChangeListener cl) {
-		if (listenerList == null) {
-			listenerList = new EventListenerList();
+	public synchronized void removeChangeListener(ChangeListener cl) {
+		ChangeListener[] old = getListenerArray();
+		for (int i = old.length - 1; i >= 0; i--) {
+			if (old[i] == cl
+					|| (old[i] instanceof WeakChangeListener && ((WeakChangeListener) old[i]).delegate
+							.get() == cl)) {
+				ChangeListener[] updated = new ChangeListener[old.length - 1];
+				System.arraycopy(old, 0, updated, 0, i);
+				System.arraycopy(old, i + 1, updated, i, old.length - i - 1);
+				listeners = updated;
+				return;
+			}
 		}
-		listenerList.remove(ChangeListener.class, cl);
 	}
 
 	/**
@@ -136,21 +531,81 @@ public abstract class AbstractProperty<T> implements Serializable {
 	 *            the new name
 	 */
 	public void setName(String name) {
+		String oldName = this.name;
 		this.name = name;
+		NameChangeListener[] ls = getNameListenerArray();
+		for (int i = ls.length - 1; i >= 0; i--) {
+			ls[i].nameChanged(this, oldName, name);
+		}
 		fireChangeEvent();
 	}
 
 	/**
-	 * Sets the value of this property.
+	 * Atomically replaces the value of this property if it is still the
+	 * expected one, without notifying anyone.
+	 * 
+	 * @param expect
+	 *            the expected value
+	 * @param update
+	 *            the new value
+	 * @return {@code true} if the value was replaced
+	 */
+	final boolean replaceValue(T expect, T update) {
+		return VALUE_UPDATER.compareAndSet(this, expect, update);
+	}
+
+	/**
+	 * Sets the value of this property. If the new value is
+	 * {@linkplain Object#equals(Object) equal} to the current value, nothing
+	 * happens and no listeners are notified. This method may be called from
+	 * any thread.
 	 * 
 	 * @param value
 	 *            the new value
 	 */
 	public void setValue(T value) {
-		this.value = value;
+		T oldValue;
+		do {
+			oldValue = this.value;
+			if (isEqual(oldValue, value)) {
+				return;
+			}
+		} while (!VALUE_UPDATER.compareAndSet(this, oldValue, value));
+		if (PropertyMetrics.isEnabled()) {
+			PropertyMetrics.valueChanged(this);
+		}
+		valueChanged(oldValue, value);
+	}
+
+	/**
+	 * Invoked by {@link #setValue(Object)}, on the thread that set the value,
+	 * after the value has changed. The default implementation notifies the
+	 * value listeners and then the change listeners.
+	 * 
+	 * @param oldValue
+	 *            the previous value
+	 * @param newValue
+	 *            the new value
+	 */
+	protected void valueChanged(T oldValue, T newValue) {
+		fireValueChange(oldValue, newValue);
 		fireChangeEvent();
 	}
 
+	/**
+	 * Determines whether two values are equal, treating two {@code null}s as
+	 * equal.
+	 * 
+	 * @param a
+	 *            the first value
+	 * @param b
+	 *            the second value
+	 * @return whether the values are equal
+	 */
+	protected static boolean isEqual(Object a, Object b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
 	/**
 	 * Gets the description of this property.
 	 * 
@@ -170,4 +625,86 @@ public abstract class AbstractProperty<T> implements Serializable {
 		this.description = description;
 		fireChangeEvent();
 	}
+
+	/**
+	 * Opens a batch on this property. Until the matching call to
+	 * {@link #endBatch()}, change notifications are deferred and delivered
+	 * once when the outermost batch ends.
+	 */
+	synchronized void beginBatch() {
+		batchDepth++;
+	}
+
+	/**
+	 * Closes a batch opened with {@link #beginBatch()}. If this closes the
+	 * outermost batch, {@link #commitBatch()} is invoked.
+	 */
+	void endBatch() {
+		boolean outermost;
+		synchronized (this) {
+			outermost = batchDepth > 0 && --batchDepth == 0;
+		}
+		if (outermost) {
+			commitBatch();
+		}
+	}
+
+	/**
+	 * Determines whether this property is currently in a batch.
+	 * 
+	 * @return {@code true} if notifications are being deferred
+	 */
+	protected boolean isBatching() {
+		return batchDepth > 0;
+	}
+
+	/**
+	 * Delivers the notifications deferred during a batch, on the thread that
+	 * closed it. Subclasses that defer additional work should override this
+	 * method, take and clear their deferred state while holding the lock of
+	 * this property, and call the superclass implementation last.
+	 */
+	protected void commitBatch() {
+		boolean value;
+		boolean change;
+		T oldValue;
+		synchronized (this) {
+			value = valuePending;
+			change = changePending;
+			oldValue = batchOldValue;
+			valuePending = false;
+			changePending = false;
+			batchOldValue = null;
+		}
+		if (value) {
+			T newValue = getValue();
+			if (!isEqual(oldValue, newValue)) {
+				fireValueChange(oldValue, newValue);
+			}
+		}
+		if (change) {
+			commitChange();
+		}
+	}
+
+	/**
+	 * Determines whether {@code null} is a meaningful value of this property,
+	 * rather than a value that is replaced or rejected. This is used to decide
+	 * whether a stored {@code null} may be restored; the default
+	 * implementation returns {@code false}.
+	 * 
+	 * @return {@code true} if the property may hold {@code null}
+	 */
+	boolean isNullable() {
+		return false;
+	}
+
+	/**
+	 * Notifies the change listeners of a change deferred during a batch. This
+	 * is invoked by {@link #commitBatch()}; the default implementation
+	 * notifies them immediately.
+	 */
+	void commitChange() {
+		fireChangeEvent();
+	}
 }
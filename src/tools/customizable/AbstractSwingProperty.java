@@ -1,16 +1,29 @@
 package tools.customizable;
 
+import java.awt.event.HierarchyEvent;
+import java.awt.event.HierarchyListener;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.util.ArrayList;
 
 import javax.swing.Action;
 import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
 
 /**
  * A {@linkplain AbstractProperty property} with support for Swing GUI editors
  * and viewers.
+ * <p>
+ * Editors and viewers are only ever updated on the event dispatch thread, and
+ * change listeners are notified of value changes on that thread. When the
+ * value is set from another thread, the refresh is scheduled on the event
+ * dispatch thread instead; any number of changes made before it runs result
+ * in a single refresh showing the latest value.
+ * <p>
+ * Editors and viewers that are not {@linkplain JComponent#isShowing() showing}
+ * (for example, on a hidden card or tab, or in a window that has not been
+ * shown) are not updated when the property changes; instead, each is updated
+ * when it is next shown. A minimized window still counts as showing, so its
+ * components are updated as usual.
  * 
  * @author William Chargin
  * 
@@ -30,14 +43,74 @@ public abstract class AbstractSwingProperty<T, E extends JComponent, V extends J
 	private static final long serialVersionUID = 1L;
 
 	/**
-	 * The editors for this property.
+	 * The client property set to {@link Boolean#TRUE} on an editor or viewer
+	 * whose update was skipped because it was not showing.
 	 */
-	private transient ArrayList<E> editors = new ArrayList<E>();
+	private static final String STALE = "tools.customizable.stale"; //$NON-NLS-1$
 
 	/**
-	 * The viewers for this property.
+	 * Updates a stale editor or viewer when it is shown.
+	 * 
+	 * @author William Chargin
+	 * 
+	 */
+	private final class ShowingListener implements HierarchyListener {
+
+		/**
+		 * Whether this listener is registered on editors (rather than
+		 * viewers).
+		 */
+		private final boolean editor;
+
+		/**
+		 * Creates the listener.
+		 * 
+		 * @param editor
+		 *            whether the listener is for editors
+		 */
+		private ShowingListener(boolean editor) {
+			this.editor = editor;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public void hierarchyChanged(HierarchyEvent e) {
+			if ((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) == 0) {
+				return;
+			}
+			JComponent c = (JComponent) e.getComponent();
+			if (c.isShowing() && c.getClientProperty(STALE) != null) {
+				c.putClientProperty(STALE, null);
+				if (editor) {
+					updateEditor((E) c);
+				} else {
+					updateViewer((V) c);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The editors for this property. They are weakly referenced, so an editor
+	 * that is no longer displayed does not outlive its container.
+	 */
+	private transient ComponentRegistry<E> editors = new ComponentRegistry<E>();
+
+	/**
+	 * The viewers for this property. They are weakly referenced, so a viewer
+	 * that is no longer displayed does not outlive its container.
+	 */
+	private transient ComponentRegistry<V> viewers = new ComponentRegistry<V>();
+
+	/**
+	 * The listener that updates stale editors when they are shown.
 	 */
-	private transient ArrayList<V> viewers = new ArrayList<V>();
+	private transient ShowingListener editorShowingListener;
+
+	/**
+	 * The listener that updates stale viewers when they are shown.
+	 */
+	private transient ShowingListener viewerShowingListener;
 
 	/**
 	 * The action invoked if the edit action is {@link EditAction#ACTION}.
@@ -54,6 +127,18 @@ public abstract class AbstractSwingProperty<T, E extends JComponent, V extends J
 	 */
 	private boolean enabled = true;
 
+	/**
+	 * Whether an editor update was deferred during the current batch. This is
+	 * guarded by the lock of this property.
+	 */
+	private transient boolean editorsPending;
+
+	/**
+	 * Whether a viewer update was deferred during the current batch. This is
+	 * guarded by the lock of this property.
+	 */
+	private transient boolean viewersPending;
+
 	/**
 	 * Creates the property with a blank name (with {@link String#String()}) and
 	 * a {@code null} value
@@ -109,29 +194,183 @@ public abstract class AbstractSwingProperty<T, E extends JComponent, V extends J
 	}
 
 	/**
-	 * Creates, sets up, and returns a new editor for this property.
+	 * Creates, sets up, and returns a new editor for this property. The editor
+	 * is kept up to date until it is {@linkplain #releaseEditor(JComponent)
+	 * released} or garbage collected.
 	 * 
 	 * @return the new editor
 	 */
 	public E getEditor() {
 		E e = createEditor();
 		updateEditor(e);
+		e.addHierarchyListener(getShowingListener(true));
 		editors.add(e);
+		if (PropertyMetrics.isEnabled()) {
+			PropertyMetrics.componentCreated(this);
+		}
 		return e;
 	}
 
 	/**
-	 * Creates, sets up, and returns a new viewer for this property.
+	 * Creates, sets up, and returns a new viewer for this property. The viewer
+	 * is kept up to date until it is {@linkplain #releaseViewer(JComponent)
+	 * released} or garbage collected.
 	 * 
 	 * @return the new viewer
 	 */
 	public V getViewer() {
 		V v = createViewer();
 		updateViewer(v);
+		v.addHierarchyListener(getShowingListener(false));
 		viewers.add(v);
+		if (PropertyMetrics.isEnabled()) {
+			PropertyMetrics.componentCreated(this);
+		}
+		return v;
+	}
+
+	/**
+	 * Gets the listener that updates stale editors or viewers when they are
+	 * shown.
+	 * 
+	 * @param editor
+	 *            {@code true} for the editor listener, {@code false} for the
+	 *            viewer listener
+	 * @return the listener
+	 */
+	private ShowingListener getShowingListener(boolean editor) {
+		if (editor) {
+			if (editorShowingListener == null) {
+				editorShowingListener = new ShowingListener(true);
+			}
+			return editorShowingListener;
+		} else {
+			if (viewerShowingListener == null) {
+				viewerShowingListener = new ShowingListener(false);
+			}
+			return viewerShowingListener;
+		}
+	}
+
+	/**
+	 * Detaches an editor or viewer from the listener that updates it when it
+	 * is shown.
+	 * 
+	 * @param c
+	 *            the editor or viewer
+	 * @param editor
+	 *            whether {@code c} is an editor
+	 */
+	private void detach(JComponent c, boolean editor) {
+		c.removeHierarchyListener(getShowingListener(editor));
+		c.putClientProperty(STALE, null);
+	}
+
+	/**
+	 * Creates and sets up a new viewer that is not kept up to date. This is
+	 * for components that display many properties with a single viewer, such
+	 * as a {@link VirtualPropertyPanel}, which re-target the viewer with
+	 * {@link #updateDetachedViewer(JComponent)}.
+	 * 
+	 * @return the new viewer
+	 */
+	V createDetachedViewer() {
+		V v = createViewer();
+		updateViewer(v);
 		return v;
 	}
 
+	/**
+	 * Updates a viewer created by {@link #createDetachedViewer()} on a
+	 * property of the same class to display this property.
+	 * 
+	 * @param viewer
+	 *            the viewer to update
+	 */
+	@SuppressWarnings("unchecked")
+	void updateDetachedViewer(JComponent viewer) {
+		updateViewer((V) viewer);
+	}
+
+	/**
+	 * Stops updating the given editor. The editor remains usable as a
+	 * component, but no longer reflects changes to this property.
+	 * 
+	 * @param editor
+	 *            the editor to release
+	 * @return {@code true} if the editor was created by this property and had
+	 *         not yet been released
+	 */
+	public boolean releaseEditor(E editor) {
+		if (!editors.remove(editor)) {
+			return false;
+		}
+		detach(editor, true);
+		return true;
+	}
+
+	/**
+	 * Stops updating the given viewer. The viewer remains usable as a
+	 * component, but no longer reflects changes to this property.
+	 * 
+	 * @param viewer
+	 *            the viewer to release
+	 * @return {@code true} if the viewer was created by this property and had
+	 *         not yet been released
+	 */
+	public boolean releaseViewer(V viewer) {
+		if (!viewers.remove(viewer)) {
+			return false;
+		}
+		detach(viewer, false);
+		return true;
+	}
+
+	/**
+	 * Stops updating the given editor or viewer.
+	 * 
+	 * @param component
+	 *            the editor or viewer to release
+	 * @return {@code true} if the component was created by this property and
+	 *         had not yet been released
+	 */
+	@SuppressWarnings("unchecked")
+	boolean release(JComponent component) {
+		return releaseEditor((E) component) || releaseViewer((V) component);
+	}
+
+	/**
+	 * Gets the number of editors currently kept up to date.
+	 * 
+	 * @return the number of live editors
+	 */
+	int getLiveEditorCount() {
+		return editors.size();
+	}
+
+	/**
+	 * Gets the number of viewers currently kept up to date.
+	 * 
+	 * @return the number of live viewers
+	 */
+	int getLiveViewerCount() {
+		return viewers.size();
+	}
+
+	/**
+	 * Stops updating all editors and viewers created so far.
+	 */
+	public void releaseAll() {
+		for (E editor : editors) {
+			detach(editor, true);
+		}
+		for (V viewer : viewers) {
+			detach(viewer, false);
+		}
+		editors.clear();
+		viewers.clear();
+	}
+
 	/**
 	 * Determines whether the user may edit/action the property.
 	 * 
@@ -176,11 +415,60 @@ public abstract class AbstractSwingProperty<T, E extends JComponent, V extends J
 	}
 
 	@Override
-	public void setValue(T value) {
-		this.value = value;
+	protected void valueChanged(T oldValue, T newValue) {
+		fireValueChange(oldValue, newValue);
+		refreshLater();
+	}
+
+	/**
+	 * Refreshes this property after its value changed. On the event dispatch
+	 * thread, the change listeners are notified immediately, and the editors
+	 * and viewers are updated immediately unless the {@link UpdateScheduler}
+	 * has a frame rate. Otherwise, {@link #refresh()} is scheduled on the
+	 * event dispatch thread; if there is nothing to refresh (no editors,
+	 * viewers, or change listeners), nothing is scheduled.
+	 */
+	protected void refreshLater() {
+		if (SwingUtilities.isEventDispatchThread()) {
+			if (UpdateScheduler.isThrottled() && !isBatching()) {
+				if (hasComponents()) {
+					UpdateScheduler.schedule(this, false);
+				}
+				fireChangeEvent();
+			} else {
+				refresh();
+			}
+		} else if (hasComponents() || hasChangeListeners()) {
+			UpdateScheduler.schedule(this, true);
+		}
+	}
+
+	/**
+	 * Updates all editors and viewers and notifies the change listeners. This
+	 * must be called on the event dispatch thread.
+	 */
+	protected void refresh() {
+		refreshComponents();
+		fireChangeEvent();
+	}
+
+	/**
+	 * Updates all editors and viewers. This must be called on the event
+	 * dispatch thread.
+	 */
+	void refreshComponents() {
 		updateEditors();
 		updateViewers();
-		fireChangeEvent();
+	}
+
+	/**
+	 * Determines whether this property may have any editors or viewers to
+	 * update.
+	 * 
+	 * @return {@code true} if any editors or viewers are registered
+	 */
+	private boolean hasComponents() {
+		return !editors.isEmpty() || !viewers.isEmpty();
 	}
 
 	/**
@@ -192,11 +480,35 @@ public abstract class AbstractSwingProperty<T, E extends JComponent, V extends J
 	protected abstract void updateEditor(E editor);
 
 	/**
-	 * Updates all editors with the {@link #updateEditor(JComponent)} method.
+	 * Updates all showing editors with the {@link #updateEditor(JComponent)}
+	 * method. The others are marked to be updated when they are shown.
 	 */
 	protected void updateEditors() {
+		if (isBatching()) {
+			synchronized (this) {
+				if (isBatching()) {
+					editorsPending = true;
+					return;
+				}
+			}
+		}
+		boolean timing = isTiming();
+		long total = 0;
 		for (E editor : editors) {
-			updateEditor(editor);
+			if (!editor.isShowing()) {
+				editor.putClientProperty(STALE, Boolean.TRUE);
+			} else if (timing) {
+				long start = System.nanoTime();
+				updateEditor(editor);
+				long nanos = System.nanoTime() - start;
+				ListenerWatchdog.check(this, editor, nanos);
+				total += nanos;
+			} else {
+				updateEditor(editor);
+			}
+		}
+		if (timing && PropertyMetrics.isEnabled()) {
+			PropertyMetrics.componentsUpdated(this, true, total);
 		}
 	}
 
@@ -209,30 +521,81 @@ public abstract class AbstractSwingProperty<T, E extends JComponent, V extends J
 	protected abstract void updateViewer(V viewer);
 
 	/**
-	 * Updates all viewers with the {@link #updateViewer(JComponent)} method.
+	 * Updates all showing viewers with the {@link #updateViewer(JComponent)}
+	 * method. The others are marked to be updated when they are shown.
 	 */
 	protected void updateViewers() {
+		if (isBatching()) {
+			synchronized (this) {
+				if (isBatching()) {
+					viewersPending = true;
+					return;
+				}
+			}
+		}
+		boolean timing = isTiming();
+		long total = 0;
 		for (V viewer : viewers) {
-			updateViewer(viewer);
+			if (!viewer.isShowing()) {
+				viewer.putClientProperty(STALE, Boolean.TRUE);
+			} else if (timing) {
+				long start = System.nanoTime();
+				updateViewer(viewer);
+				long nanos = System.nanoTime() - start;
+				ListenerWatchdog.check(this, viewer, nanos);
+				total += nanos;
+			} else {
+				updateViewer(viewer);
+			}
+		}
+		if (timing && PropertyMetrics.isEnabled()) {
+			PropertyMetrics.componentsUpdated(this, false, total);
 		}
 	}
 
-	private synchronized void writeObject(ObjectOutputStream oos)
-			throws IOException {
-		ArrayList<E> oldEditors = new ArrayList<E>(editors);
-		ArrayList<V> oldViewers = new ArrayList<V>(viewers);
-		editors.clear();
-		viewers.clear();
-		oos.defaultWriteObject();
-		editors.addAll(oldEditors);
-		viewers.addAll(oldViewers);
+	/**
+	 * Delivers the notifications deferred during a batch. If the batch was
+	 * closed on a thread other than the event dispatch thread, the editors,
+	 * viewers, and change listeners are refreshed on the event dispatch thread
+	 * by the {@link UpdateScheduler}, as for a value set on that thread.
+	 */
+	@Override
+	protected void commitBatch() {
+		boolean editorsChanged;
+		boolean viewersChanged;
+		synchronized (this) {
+			editorsChanged = editorsPending;
+			viewersChanged = viewersPending;
+			editorsPending = false;
+			viewersPending = false;
+		}
+		if (SwingUtilities.isEventDispatchThread()) {
+			if (editorsChanged) {
+				updateEditors();
+			}
+			if (viewersChanged) {
+				updateViewers();
+			}
+		} else if (editorsChanged || viewersChanged) {
+			UpdateScheduler.schedule(this, false);
+		}
+		super.commitBatch();
+	}
+
+	@Override
+	void commitChange() {
+		if (SwingUtilities.isEventDispatchThread()) {
+			fireChangeEvent();
+		} else {
+			UpdateScheduler.schedule(this, true);
+		}
 	}
 
-	private synchronized void readObject(ObjectInputStream oos)
+	private void readObject(ObjectInputStream oos)
 			throws IOException, ClassNotFoundException {
 		oos.defaultReadObject();
 
-		editors = new ArrayList<E>();
-		viewers = new ArrayList<V>();
+		editors = new ComponentRegistry<E>();
+		viewers = new ComponentRegistry<V>();
 	}
 }
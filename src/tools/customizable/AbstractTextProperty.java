@@ -0,0 +1,638 @@
+package tools.customizable;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.FocusAdapter;
+import java.awt.event.FocusEvent;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamException;
+
+import javax.swing.JComponent;
+import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.JTextComponent;
+import javax.swing.text.PlainDocument;
+
+/**
+ * A property holding text, whose editors and viewers share a single
+ * {@link Document}. Typing into one editor updates every other component
+ * through the document itself, so no component copies the whole text on each
+ * keystroke. The {@code String} value is only built from the document when it
+ * is {@linkplain #getValue() requested}, or eagerly when value listeners are
+ * registered (since they must be told the new value). Text mapped from a file
+ * is never built eagerly; see {@link #setDocument(Document)}.
+ * <p>
+ * Values set programmatically are copied into the document on the event
+ * dispatch thread. If the user edits the document before such a copy is made,
+ * the edit wins.
+ * <p>
+ * By default, each edit is committed to the value as it is made. With a
+ * different {@linkplain #setCommitPolicy(CommitPolicy) commit policy}, edits
+ * are held in the document, and the value and listeners are left alone,
+ * until the user pauses or leaves the editor.
+ * 
+ * @author William Chargin
+ * 
+ * @param <E>
+ *            the editor type
+ * @param <V>
+ *            the viewer type
+ */
+public abstract class AbstractTextProperty<E extends JComponent, V extends JComponent>
+		extends AbstractSwingProperty<String, E, V> {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The document shared by the components, or {@code null} if it has not
+	 * been created.
+	 */
+	private transient volatile Document document;
+
+	/**
+	 * The listener that tracks edits to the document.
+	 */
+	private transient DocumentListener documentListener;
+
+	/**
+	 * Whether the document has been edited since {@link #value} was last
+	 * built from it.
+	 */
+	private transient volatile boolean stale;
+
+	/**
+	 * Whether {@link #value} has been set since it was last copied into the
+	 * document.
+	 */
+	private transient volatile boolean documentStale;
+
+	/**
+	 * The number of edits committed from the document. This is only modified
+	 * on the event dispatch thread.
+	 */
+	private transient volatile int edits;
+
+	/**
+	 * Whether the document is being changed to match the value, in which case
+	 * the changes are not treated as edits.
+	 */
+	private transient boolean updating;
+
+	/**
+	 * When edits are committed.
+	 */
+	private CommitPolicy commitPolicy = CommitPolicy.IMMEDIATE;
+
+	/**
+	 * The idle time, in milliseconds, after which edits are committed under
+	 * {@link CommitPolicy#DEBOUNCED}.
+	 */
+	private int commitDelay = 300;
+
+	/**
+	 * Whether the document holds edits that have not been committed.
+	 */
+	private transient boolean uncommitted;
+
+	/**
+	 * The timer that commits edits under {@link CommitPolicy#DEBOUNCED}, or
+	 * {@code null} if it has not been created.
+	 */
+	private transient Timer commitTimer;
+
+	/**
+	 * The listener that commits edits when an editor loses focus or the user
+	 * presses Enter.
+	 */
+	private transient CommitTrigger commitTrigger;
+
+	/**
+	 * The mapped text made the value while this property is serialized, or
+	 * {@code null} if there is none.
+	 */
+	private transient String serializedText;
+
+	/**
+	 * Commits edits when an editor loses focus or the user presses Enter.
+	 * 
+	 * @author William Chargin
+	 * 
+	 */
+	private class CommitTrigger extends FocusAdapter implements ActionListener {
+
+		@Override
+		public void focusLost(FocusEvent fe) {
+			commit();
+		}
+
+		@Override
+		public void actionPerformed(ActionEvent ae) {
+			commit();
+		}
+	}
+
+	/**
+	 * Creates the property with an empty name and value.
+	 */
+	public AbstractTextProperty() {
+		this(new String(), new String());
+	}
+
+	/**
+	 * Creates the property with the given name and value.
+	 * 
+	 * @param name
+	 *            the name
+	 * @param value
+	 *            the value
+	 */
+	public AbstractTextProperty(String name, String value) {
+		super(name, value == null ? new String() : value);
+	}
+
+	/**
+	 * Gets the document shared by the editors and viewers of this property,
+	 * creating it if necessary. This must be called on the event dispatch
+	 * thread.
+	 * 
+	 * @return the document
+	 */
+	protected Document getDocument() {
+		if (document == null) {
+			install(createDocument());
+			documentStale = true;
+		}
+		syncDocument();
+		return document;
+	}
+
+	/**
+	 * Replaces the document shared by the components. The value of this
+	 * property becomes the text of the new document, and is built from it
+	 * when requested. Subclasses should install the new document in each
+	 * component when it is next updated. This must be called on the event
+	 * dispatch thread.
+	 * <p>
+	 * If the old or the new document is a {@link MappedDocument}, value
+	 * listeners are not notified, since either value could only be given to
+	 * them by building the whole mapped text; change listeners still are.
+	 * 
+	 * @param document
+	 *            the new document
+	 */
+	protected void setDocument(Document document) {
+		boolean mapped = document instanceof MappedDocument;
+		String oldValue = !mapped && !isMapped() && hasValueChangeListeners()
+				? getValue() : null;
+		if (commitTimer != null) {
+			commitTimer.stop();
+		}
+		uncommitted = false;
+		install(document);
+		synchronized (this) {
+			edits++;
+			stale = true;
+			if (mapped) {
+				// Not built until requested; this also lets any value
+				// that is set later replace the mapped text.
+				value = null;
+			}
+		}
+		documentStale = false;
+		if (PropertyMetrics.isEnabled()) {
+			PropertyMetrics.valueChanged(this);
+		}
+		if (oldValue != null) {
+			fireValueChange(oldValue, materialize());
+		}
+		refreshLater();
+	}
+
+	/**
+	 * Determines whether the document is a read-only {@link MappedDocument}.
+	 * 
+	 * @return {@code true} if the text is mapped from a file
+	 */
+	boolean isMapped() {
+		return document instanceof MappedDocument;
+	}
+
+	/**
+	 * Makes the given document the shared document, and starts tracking its
+	 * edits.
+	 * 
+	 * @param document
+	 *            the new document
+	 */
+	private void install(Document document) {
+		if (documentListener == null) {
+			documentListener = new DocumentListener() {
+				@Override
+				public void removeUpdate(DocumentEvent de) {
+					edited();
+				}
+
+				@Override
+				public void insertUpdate(DocumentEvent de) {
+					edited();
+				}
+
+				@Override
+				public void changedUpdate(DocumentEvent de) {
+					// Attributes only; the text is unchanged.
+				}
+			};
+		}
+		if (this.document != null) {
+			this.document.removeDocumentListener(documentListener);
+		}
+		document.addDocumentListener(documentListener);
+		this.document = document;
+	}
+
+	/**
+	 * Creates the document shared by the components. The default
+	 * implementation creates a {@link PlainDocument}.
+	 * 
+	 * @return a new, empty document
+	 */
+	protected Document createDocument() {
+		return new PlainDocument();
+	}
+
+	/**
+	 * Gets the value of this property, building it from the document if the
+	 * document has been edited since the value was last requested.
+	 * 
+	 * @return the current value
+	 */
+	@Override
+	public String getValue() {
+		return stale ? materialize() : value;
+	}
+
+	/**
+	 * Sets the value of this property. A {@code null} value is treated as the
+	 * empty string. This method may be called from any thread.
+	 * 
+	 * @param value
+	 *            the new value
+	 */
+	@Override
+	public void setValue(String value) {
+		if (stale && !isMapped()) {
+			materialize();
+		}
+		super.setValue(value == null ? new String() : value);
+	}
+
+	/**
+	 * Adds a value change listener. The value is first built from any edits
+	 * made while no one was listening, so that the listener is told the
+	 * correct old value on the next edit.
+	 * 
+	 * @param vcl
+	 *            the listener to add
+	 */
+	@Override
+	public void addValueChangeListener(ValueChangeListener<? super String> vcl) {
+		if (stale && !isMapped()) {
+			materialize();
+		}
+		super.addValueChangeListener(vcl);
+	}
+
+	@Override
+	protected void valueChanged(String oldValue, String newValue) {
+		synchronized (this) {
+			stale = false;
+		}
+		documentStale = true;
+		if (document != null && SwingUtilities.isEventDispatchThread()) {
+			syncDocument();
+		} else if (document != null) {
+			UpdateScheduler.schedule(this, false);
+		}
+		super.valueChanged(oldValue, newValue);
+	}
+
+	@Override
+	void refreshComponents() {
+		syncDocument();
+		super.refreshComponents();
+	}
+
+	/**
+	 * Gets the policy that determines when edits are committed.
+	 * 
+	 * @return the commit policy
+	 */
+	public CommitPolicy getCommitPolicy() {
+		return commitPolicy;
+	}
+
+	/**
+	 * Sets the policy that determines when edits are committed. This should
+	 * be called on the event dispatch thread. Switching to
+	 * {@link CommitPolicy#IMMEDIATE} commits any pending edits.
+	 * 
+	 * @param commitPolicy
+	 *            the new commit policy
+	 * @throws IllegalArgumentException
+	 *             if the policy is {@code null}
+	 */
+	public void setCommitPolicy(CommitPolicy commitPolicy)
+			throws IllegalArgumentException {
+		if (commitPolicy == null) {
+			throw new IllegalArgumentException("null policy"); //$NON-NLS-1$
+		}
+		this.commitPolicy = commitPolicy;
+		if (commitPolicy == CommitPolicy.IMMEDIATE) {
+			commit();
+		}
+	}
+
+	/**
+	 * Gets the idle time after which edits are committed under
+	 * {@link CommitPolicy#DEBOUNCED}.
+	 * 
+	 * @return the delay, in milliseconds
+	 */
+	public int getCommitDelay() {
+		return commitDelay;
+	}
+
+	/**
+	 * Sets the idle time after which edits are committed under
+	 * {@link CommitPolicy#DEBOUNCED}. The default is 300 milliseconds.
+	 * 
+	 * @param commitDelay
+	 *            the delay, in milliseconds
+	 * @throws IllegalArgumentException
+	 *             if the delay is negative
+	 */
+	public void setCommitDelay(int commitDelay)
+			throws IllegalArgumentException {
+		if (commitDelay < 0) {
+			throw new IllegalArgumentException("negative delay"); //$NON-NLS-1$
+		}
+		this.commitDelay = commitDelay;
+	}
+
+	/**
+	 * Commits any edits that the commit policy is holding back, updating the
+	 * value and notifying listeners. This must be called on the event dispatch
+	 * thread.
+	 */
+	public void commit() {
+		if (commitTimer != null) {
+			commitTimer.stop();
+		}
+		if (uncommitted) {
+			uncommitted = false;
+			committed();
+		}
+	}
+
+	/**
+	 * Makes the given editor commit edits when it loses focus, and, if it is a
+	 * {@link JTextField}, when the user presses Enter. Subclasses should call
+	 * this for each editor they create.
+	 * 
+	 * @param editor
+	 *            the text component of the editor
+	 */
+	protected void addCommitTriggers(JTextComponent editor) {
+		if (commitTrigger == null) {
+			commitTrigger = new CommitTrigger();
+		}
+		editor.addFocusListener(commitTrigger);
+		if (editor instanceof JTextField) {
+			((JTextField) editor).addActionListener(commitTrigger);
+		}
+	}
+
+	/**
+	 * Builds {@link #value} from the document. Text mapped from a file is
+	 * built afresh on each call and is not kept, so that it does not stay on
+	 * the heap.
+	 * 
+	 * @return the text of the document
+	 */
+	private String materialize() {
+		final Document doc = document;
+		if (doc == null) {
+			return value;
+		}
+		final String[] text = new String[1];
+		final int[] seen = new int[1];
+		doc.render(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					text[0] = doc.getText(0, doc.getLength());
+				} catch (BadLocationException ble) {
+					throw new IllegalStateException(ble);
+				}
+				seen[0] = edits;
+			}
+		});
+		if (doc instanceof MappedDocument) {
+			return text[0];
+		}
+		synchronized (this) {
+			if (stale && edits == seen[0]) {
+				value = text[0];
+				stale = false;
+			}
+		}
+		return text[0];
+	}
+
+	/**
+	 * Invoked on the event dispatch thread when the user edits the document.
+	 */
+	private void edited() {
+		if (updating) {
+			return;
+		}
+		documentStale = false;
+		switch (commitPolicy) {
+		case DEBOUNCED:
+			uncommitted = true;
+			if (commitTimer == null) {
+				commitTimer = new Timer(commitDelay, new ActionListener() {
+					@Override
+					public void actionPerformed(ActionEvent ae) {
+						commit();
+					}
+				});
+				commitTimer.setRepeats(false);
+			}
+			commitTimer.setInitialDelay(commitDelay);
+			commitTimer.restart();
+			break;
+		case ON_COMMIT:
+			uncommitted = true;
+			break;
+		default:
+			committed();
+			break;
+		}
+	}
+
+	/**
+	 * Makes the edits in the document the value of this property, and
+	 * notifies listeners. This must be called on the event dispatch thread.
+	 */
+	private void committed() {
+		if (hasValueChangeListeners()) {
+			// The document already holds the edit, so the old value is the
+			// last one built. If earlier edits were never built (because no
+			// one was listening then), the document is all there is.
+			String oldValue = stale ? materialize() : value;
+			String newValue;
+			try {
+				newValue = document.getText(0, document.getLength());
+			} catch (BadLocationException ble) {
+				throw new IllegalStateException(ble);
+			}
+			synchronized (this) {
+				edits++;
+				value = newValue;
+				stale = false;
+			}
+			if (PropertyMetrics.isEnabled()) {
+				PropertyMetrics.valueChanged(this);
+			}
+			fireValueChange(oldValue, newValue);
+		} else {
+			synchronized (this) {
+				edits++;
+				stale = true;
+			}
+			if (PropertyMetrics.isEnabled()) {
+				PropertyMetrics.valueChanged(this);
+			}
+		}
+		refreshLater();
+	}
+
+	/**
+	 * Copies the value into the document, if it was set since the last copy.
+	 * This must be called on the event dispatch thread.
+	 */
+	private void syncDocument() {
+		if (document == null || !documentStale) {
+			return;
+		}
+		documentStale = false;
+		if (stale || uncommitted) {
+			// The user has edited the document since; keep the edit.
+			return;
+		}
+		if (document instanceof MappedDocument) {
+			// Mapped text is read-only, so leave it for an ordinary document.
+			install(createDocument());
+		}
+		updating = true;
+		try {
+			if (document.getLength() == 0) {
+				document.insertString(0, value, null);
+			} else if (document instanceof AbstractDocument) {
+				((AbstractDocument) document).replace(0, document.getLength(),
+						value, null);
+			} else {
+				document.remove(0, document.getLength());
+				document.insertString(0, value, null);
+			}
+		} catch (BadLocationException ble) {
+			throw new IllegalStateException(ble);
+		} finally {
+			updating = false;
+		}
+	}
+
+	/**
+	 * Builds the value from the document before this property is serialized,
+	 * since the document itself is not.
+	 * 
+	 * @return this property
+	 * @throws ObjectStreamException
+	 *             never
+	 */
+	protected Object writeReplace() throws ObjectStreamException {
+		if (stale && isMapped()) {
+			// Mapped text is not kept as the value, so make it the value
+			// only until it has been written.
+			String text = materialize();
+			if (replaceValue(null, text)) {
+				serializedText = text;
+			}
+		} else if (stale) {
+			materialize();
+		}
+		return this;
+	}
+
+	/**
+	 * Writes this property. Any mapped text made the value by
+	 * {@link #writeReplace()} has been written by now, and is dropped again.
+	 * 
+	 * @param oos
+	 *            the stream
+	 * @throws IOException
+	 *             if the stream cannot be written
+	 */
+	private void writeObject(ObjectOutputStream oos) throws IOException {
+		oos.defaultWriteObject();
+		String text = serializedText;
+		if (text != null) {
+			serializedText = null;
+			replaceValue(text, null);
+		}
+	}
+
+	/**
+	 * Reads this property, giving the default commit policy to properties
+	 * written before commit policies existed.
+	 * 
+	 * @param ois
+	 *            the stream
+	 * @throws IOException
+	 *             if the stream cannot be read
+	 * @throws ClassNotFoundException
+	 *             if a class in the stream cannot be found
+	 */
+	private void readObject(ObjectInputStream ois) throws IOException,
+			ClassNotFoundException {
+		ois.defaultReadObject();
+		if (commitPolicy == null) {
+			commitPolicy = CommitPolicy.IMMEDIATE;
+			commitDelay = 300;
+		}
+	}
+
+	/**
+	 * Gives the default commit policy to properties written before this class
+	 * was their superclass.
+	 * 
+	 * @throws ObjectStreamException
+	 *             never
+	 */
+	private void readObjectNoData() throws ObjectStreamException {
+		commitPolicy = CommitPolicy.IMMEDIATE;
+		commitDelay = 300;
+	}
+}
@@ -0,0 +1,31 @@
+package tools.customizable;
+
+/**
+ * When the edits a user makes to a text property become its value, and its
+ * listeners are notified.
+ * 
+ * @author William Chargin
+ * 
+ * @see AbstractTextProperty#setCommitPolicy(CommitPolicy)
+ */
+public enum CommitPolicy {
+
+	/**
+	 * Every edit is committed as it is made.
+	 */
+	IMMEDIATE,
+
+	/**
+	 * Edits are committed once the user has stopped typing for the
+	 * {@linkplain AbstractTextProperty#setCommitDelay(int) commit delay}, or
+	 * when an editor loses focus.
+	 */
+	DEBOUNCED,
+
+	/**
+	 * Edits are committed when an editor loses focus, or when the user presses
+	 * Enter in a single-line editor.
+	 */
+	ON_COMMIT;
+
+}
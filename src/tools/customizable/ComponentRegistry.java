@@ -0,0 +1,192 @@
+package tools.customizable;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import javax.swing.JComponent;
+
+/**
+ * A registry of the editors or viewers created by a property. Components are
+ * only weakly referenced, so a component that is no longer displayed anywhere
+ * can be garbage collected even though its property is still alive; entries
+ * for collected components are pruned automatically.
+ * <p>
+ * The list of entries is replaced rather than modified, so iterating the
+ * registry is safe even if components are added or removed meanwhile (for
+ * example, when updating one editor causes the property to update all of its
+ * editors again).
+ * 
+ * @author William Chargin
+ * 
+ * @param <C>
+ *            the type of component registered
+ */
+final class ComponentRegistry<C extends JComponent> implements Iterable<C> {
+
+	/**
+	 * The references to the registered components. This list is never
+	 * modified once published.
+	 */
+	private volatile List<WeakReference<C>> references = Collections
+			.emptyList();
+
+	/**
+	 * The queue to which references are enqueued when their components are
+	 * collected.
+	 */
+	private final ReferenceQueue<C> queue = new ReferenceQueue<C>();
+
+	/**
+	 * Adds the given component to this registry.
+	 * 
+	 * @param component
+	 *            the component to add
+	 */
+	public synchronized void add(C component) {
+		List<WeakReference<C>> updated = live(references.size() + 1);
+		updated.add(new WeakReference<C>(component, queue));
+		references = updated;
+	}
+
+	/**
+	 * Removes the given component from this registry.
+	 * 
+	 * @param component
+	 *            the component to remove
+	 * @return {@code true} if the component was registered
+	 */
+	public synchronized boolean remove(C component) {
+		List<WeakReference<C>> updated = live(references.size());
+		for (int i = 0; i < updated.size(); i++) {
+			if (updated.get(i).get() == component) {
+				updated.remove(i);
+				references = updated;
+				return true;
+			}
+		}
+		references = updated;
+		return false;
+	}
+
+	/**
+	 * Removes all components from this registry.
+	 */
+	public synchronized void clear() {
+		references = Collections.emptyList();
+		while (queue.poll() != null) {
+			// Drain.
+		}
+	}
+
+	/**
+	 * Gets the number of live components in this registry.
+	 * 
+	 * @return the number of components that have not been collected or
+	 *         removed
+	 */
+	public int size() {
+		expunge();
+		int size = 0;
+		for (WeakReference<C> reference : references) {
+			if (reference.get() != null) {
+				size++;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Determines whether this registry has no entries. This is cheaper than
+	 * {@link #size()}, but may return {@code false} for a registry whose
+	 * components have all been collected.
+	 * 
+	 * @return {@code true} if no component is registered
+	 */
+	public boolean isEmpty() {
+		return references.isEmpty();
+	}
+
+	/**
+	 * Copies the references whose components are still alive.
+	 * 
+	 * @param capacity
+	 *            the initial capacity of the copy
+	 * @return a new, modifiable list
+	 */
+	private List<WeakReference<C>> live(int capacity) {
+		while (queue.poll() != null) {
+			// Drain; the copy below skips every cleared entry.
+		}
+		List<WeakReference<C>> copy = new ArrayList<WeakReference<C>>(capacity);
+		for (WeakReference<C> reference : references) {
+			if (reference.get() != null) {
+				copy.add(reference);
+			}
+		}
+		return copy;
+	}
+
+	/**
+	 * Prunes the entries for collected components, if there are any.
+	 */
+	private void expunge() {
+		if (queue.poll() != null) {
+			synchronized (this) {
+				references = live(references.size());
+			}
+		}
+	}
+
+	/**
+	 * Returns an iterator over the live components in this registry, as of the
+	 * time this method is called. The iterator does not support removal.
+	 * 
+	 * @return the iterator
+	 */
+	@Override
+	public Iterator<C> iterator() {
+		expunge();
+		final List<WeakReference<C>> snapshot = references;
+		return new Iterator<C>() {
+
+			/**
+			 * The index of the next reference to examine.
+			 */
+			private int index;
+
+			/**
+			 * The next component to return, or {@code null} if it has not yet
+			 * been found.
+			 */
+			private C next;
+
+			@Override
+			public boolean hasNext() {
+				while (next == null && index < snapshot.size()) {
+					next = snapshot.get(index++).get();
+				}
+				return next != null;
+			}
+
+			@Override
+			public C next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				C c = next;
+				next = null;
+				return c;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+}
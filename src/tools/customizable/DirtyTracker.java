@@ -0,0 +1,231 @@
+package tools.customizable;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Tracks which properties of a set have changed value since the last
+ * {@linkplain #checkpoint() checkpoint}, so that only those need to be saved.
+ * Each property is assigned the position it had in the set when the tracker
+ * was created; properties added to the set afterward are not tracked.
+ * <p>
+ * A typical autosave writes a full snapshot with a {@link PropertySetCodec}
+ * once, then periodically calls {@link #writeChanges(PropertySetCodec,
+ * WritableByteChannel)}. Reading the snapshot and then each set of changes, in
+ * order, with {@link PropertySetCodec#read(Collection,
+ * java.nio.channels.ReadableByteChannel)} restores the latest values.
+ * 
+ * @author William Chargin
+ * 
+ */
+public class DirtyTracker {
+
+	/**
+	 * The listener registered on one property, which marks its position
+	 * dirty. The unboxed listener interfaces are used for properties that
+	 * support them, so that tracking does not cause boxing.
+	 * 
+	 * @author William Chargin
+	 * 
+	 */
+	private final class Marker implements ValueChangeListener<Object>,
+			IntChangeListener, LongChangeListener, DoubleChangeListener {
+
+		/**
+		 * The position of the property.
+		 */
+		private final int index;
+
+		/**
+		 * Creates the marker.
+		 * 
+		 * @param index
+		 *            the position of the property
+		 */
+		private Marker(int index) {
+			this.index = index;
+		}
+
+		@Override
+		public void valueChanged(AbstractProperty<? extends Object> property,
+				Object oldValue, Object newValue) {
+			mark(index);
+		}
+
+		@Override
+		public void intChanged(IntProperty property, int oldValue,
+				int newValue) {
+			mark(index);
+		}
+
+		@Override
+		public void longChanged(LongProperty property, long oldValue,
+				long newValue) {
+			mark(index);
+		}
+
+		@Override
+		public void doubleChanged(DoubleProperty property, double oldValue,
+				double newValue) {
+			mark(index);
+		}
+	}
+
+	/**
+	 * The tracked properties, by position ({@code null} for separators).
+	 */
+	private final List<AbstractProperty<?>> properties;
+
+	/**
+	 * The listener registered on each property ({@code null} for separators).
+	 */
+	private final List<Marker> markers;
+
+	/**
+	 * The positions of the properties that have changed.
+	 */
+	private final BitSet dirty = new BitSet();
+
+	/**
+	 * Creates the tracker and starts tracking the given properties. Initially,
+	 * no property is dirty.
+	 * 
+	 * @param properties
+	 *            the properties to track
+	 */
+	public DirtyTracker(Collection<? extends AbstractProperty<?>> properties) {
+		super();
+		this.properties = new ArrayList<AbstractProperty<?>>(properties);
+		this.markers = new ArrayList<Marker>(this.properties.size());
+		for (int i = 0; i < this.properties.size(); i++) {
+			AbstractProperty<?> property = this.properties.get(i);
+			Marker marker = property == null ? null : new Marker(i);
+			markers.add(marker);
+			if (property instanceof IntProperty) {
+				((IntProperty) property).addIntChangeListener(marker);
+			} else if (property instanceof LongProperty) {
+				((LongProperty) property).addLongChangeListener(marker);
+			} else if (property instanceof DoubleProperty) {
+				((DoubleProperty) property).addDoubleChangeListener(marker);
+			} else if (property != null) {
+				property.addValueChangeListener(marker);
+			}
+		}
+	}
+
+	/**
+	 * Marks the property at the given position as dirty.
+	 * 
+	 * @param index
+	 *            the position
+	 */
+	private synchronized void mark(int index) {
+		dirty.set(index);
+	}
+
+	/**
+	 * Determines whether any property has changed since the last checkpoint.
+	 * 
+	 * @return {@code true} if at least one property is dirty
+	 */
+	public synchronized boolean isDirty() {
+		return !dirty.isEmpty();
+	}
+
+	/**
+	 * Determines whether the given property has changed since the last
+	 * checkpoint.
+	 * 
+	 * @param property
+	 *            the property
+	 * @return {@code true} if the property is tracked and dirty
+	 */
+	public synchronized boolean isDirty(AbstractProperty<?> property) {
+		for (int i = dirty.nextSetBit(0); i >= 0; i = dirty.nextSetBit(i + 1)) {
+			if (properties.get(i) == property) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the properties that have changed since the last checkpoint.
+	 * 
+	 * @return the dirty properties, in their original order
+	 */
+	public synchronized List<AbstractProperty<?>> getDirtyProperties() {
+		List<AbstractProperty<?>> result = new ArrayList<AbstractProperty<?>>(
+				dirty.cardinality());
+		for (int i = dirty.nextSetBit(0); i >= 0; i = dirty.nextSetBit(i + 1)) {
+			result.add(properties.get(i));
+		}
+		return result;
+	}
+
+	/**
+	 * Marks all properties as clean.
+	 */
+	public synchronized void checkpoint() {
+		dirty.clear();
+	}
+
+	/**
+	 * Writes the values of the properties that have changed since the last
+	 * checkpoint, and then makes a checkpoint. If writing fails, the
+	 * properties remain dirty.
+	 * 
+	 * @param codec
+	 *            the codec to write with
+	 * @param channel
+	 *            the channel to write to, which is not closed
+	 * @return the number of properties written
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public int writeChanges(PropertySetCodec codec, WritableByteChannel channel)
+			throws IOException {
+		BitSet written;
+		List<AbstractProperty<?>> changed;
+		synchronized (this) {
+			written = (BitSet) dirty.clone();
+			changed = getDirtyProperties();
+			dirty.clear();
+		}
+		boolean success = false;
+		try {
+			codec.write(changed, channel);
+			success = true;
+		} finally {
+			if (!success) {
+				synchronized (this) {
+					dirty.or(written);
+				}
+			}
+		}
+		return changed.size();
+	}
+
+	/**
+	 * Stops tracking, removing the listeners this tracker registered.
+	 */
+	public void dispose() {
+		for (int i = 0; i < properties.size(); i++) {
+			AbstractProperty<?> property = properties.get(i);
+			Marker marker = markers.get(i);
+			if (property instanceof IntProperty) {
+				((IntProperty) property).removeIntChangeListener(marker);
+			} else if (property instanceof LongProperty) {
+				((LongProperty) property).removeLongChangeListener(marker);
+			} else if (property instanceof DoubleProperty) {
+				((DoubleProperty) property).removeDoubleChangeListener(marker);
+			} else if (property != null) {
+				property.removeValueChangeListener(marker);
+			}
+		}
+	}
+}
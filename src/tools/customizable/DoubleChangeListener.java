@@ -0,0 +1,29 @@
+package tools.customizable;
+
+import java.util.EventListener;
+
+/**
+ * A listener notified when the value of an {@link DoubleProperty} changes. The
+ * values are delivered unboxed.
+ * 
+ * @author William Chargin
+ * 
+ */
+public interface DoubleChangeListener extends EventListener {
+
+	/**
+	 * Invoked after the value of a property changes. The old and new values
+	 * are never equal (as compared by
+	 * {@link Double#compare(double, double)}).
+	 * 
+	 * @param property
+	 *            the property whose value changed
+	 * @param oldValue
+	 *            the previous value
+	 * @param newValue
+	 *            the new (current) value
+	 */
+	public void doubleChanged(DoubleProperty property, double oldValue,
+			double newValue);
+
+}
@@ -0,0 +1,360 @@
+package tools.customizable;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+import javax.swing.JLabel;
+import javax.swing.JSpinner;
+import javax.swing.SpinnerNumberModel;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+/**
+ * A property holding a {@code double} within a fixed range. The value is stored
+ * unboxed; {@link #getAsDouble()}, {@link #setDouble(double)}, and
+ * {@link DoubleChangeListener}s never box it, so they are suitable for values
+ * that change at a high rate. The {@link #getValue()} and
+ * {@link #setValue(Double)} methods and {@link ValueChangeListener}s are also
+ * supported, at the cost of boxing. The value may be set from any thread.
+ * 
+ * @author William Chargin
+ * 
+ */
+public class DoubleProperty extends
+		AbstractSwingProperty<Double, JSpinner, JLabel> {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * An empty array of listeners, shared by all properties with no listeners.
+	 */
+	private static final DoubleChangeListener[] NO_LISTENERS = new DoubleChangeListener[0];
+
+	/**
+	 * The minimum value.
+	 */
+	private final double minimum;
+
+	/**
+	 * The maximum value.
+	 */
+	private final double maximum;
+
+	/**
+	 * The step size of the editors.
+	 */
+	private final double step;
+
+	/**
+	 * The bits of the current value, as given by
+	 * {@link Double#doubleToLongBits(double)}, so that the value can be
+	 * compared and set atomically. (The inherited {@link #value} field is not
+	 * used.)
+	 */
+	private volatile long doubleBits;
+
+	/**
+	 * Compares and sets {@link #doubleBits}.
+	 */
+	private static final AtomicLongFieldUpdater<DoubleProperty> BITS_UPDATER = AtomicLongFieldUpdater
+			.newUpdater(DoubleProperty.class, "doubleBits"); //$NON-NLS-1$
+
+	/**
+	 * The {@code double} listeners on this property. The array is never modified
+	 * once published.
+	 */
+	private transient volatile DoubleChangeListener[] doubleListeners = NO_LISTENERS;
+
+	/**
+	 * Whether the value changed during the current batch. This is guarded by
+	 * the lock of this property.
+	 */
+	private transient boolean doublePending;
+
+	/**
+	 * The value this property had when it first changed during the current
+	 * batch. This is guarded by the lock of this property.
+	 */
+	private transient double batchOldDouble;
+
+	/**
+	 * Creates the property with the given name and value, no limits other than
+	 * those of the {@code double} type, and an editor step size of {@code 1}.
+	 * 
+	 * @param name
+	 *            the name
+	 * @param value
+	 *            the value
+	 */
+	public DoubleProperty(String name, double value) {
+		this(name, -Double.MAX_VALUE, value, Double.MAX_VALUE, 1);
+	}
+
+	/**
+	 * Creates the property with all required parameters.
+	 * 
+	 * @param name
+	 *            the name
+	 * @param minimum
+	 *            the minimum value
+	 * @param value
+	 *            the starting value
+	 * @param maximum
+	 *            the maximum value
+	 * @param step
+	 *            the amount by which the editor's arrows change the value
+	 * @throws IllegalArgumentException
+	 *             if {@code minimum <= value <= maximum} does not hold
+	 */
+	public DoubleProperty(String name, double minimum, double value,
+			double maximum, double step) throws IllegalArgumentException {
+		super(name, null);
+		if (!(minimum <= value && value <= maximum)) {
+			throw new IllegalArgumentException("value out of range"); //$NON-NLS-1$
+		}
+		this.minimum = minimum;
+		this.maximum = maximum;
+		this.step = step;
+		this.doubleBits = Double.doubleToLongBits(value);
+	}
+
+	/**
+	 * Gets the value of this property without boxing it.
+	 * 
+	 * @return the current value
+	 */
+	public double getAsDouble() {
+		return Double.longBitsToDouble(doubleBits);
+	}
+
+	/**
+	 * Sets the value of this property without boxing it. Values outside the
+	 * range of this property are clamped to the nearest limit. If the value
+	 * does not change (as compared by {@link Double#compare(double, double)}),
+	 * nothing happens.
+	 * <p>
+	 * This method may be called from any thread.
+	 * 
+	 * @param value
+	 *            the new value
+	 * @throws IllegalArgumentException
+	 *             if the value is NaN, which lies in no range
+	 */
+	public void setDouble(double value) throws IllegalArgumentException {
+		if (Double.isNaN(value)) {
+			throw new IllegalArgumentException("value is NaN"); //$NON-NLS-1$
+		}
+		if (value < minimum) {
+			value = minimum;
+		} else if (value > maximum) {
+			value = maximum;
+		}
+		long bits = Double.doubleToLongBits(value);
+		long oldBits;
+		do {
+			oldBits = doubleBits;
+			if (oldBits == bits) {
+				return;
+			}
+		} while (!BITS_UPDATER.compareAndSet(this, oldBits, bits));
+		if (PropertyMetrics.isEnabled()) {
+			PropertyMetrics.valueChanged(this);
+		}
+		double oldValue = Double.longBitsToDouble(oldBits);
+		fireDoubleChange(oldValue, value);
+		if (hasValueChangeListeners()) {
+			fireValueChange(Double.valueOf(oldValue), Double.valueOf(value));
+		}
+		refreshLater();
+	}
+
+	/**
+	 * Gets the value of this property, boxed. Prefer {@link #getAsDouble()}.
+	 * 
+	 * @return the current value
+	 */
+	@Override
+	public Double getValue() {
+		return Double.valueOf(getAsDouble());
+	}
+
+	/**
+	 * Sets the value of this property. Prefer {@link #setDouble(double)}.
+	 * 
+	 * @param value
+	 *            the new value; {@code null} is treated as zero
+	 * @throws IllegalArgumentException
+	 *             if the value is NaN
+	 */
+	@Override
+	public void setValue(Double value) throws IllegalArgumentException {
+		setDouble(value == null ? 0 : value.doubleValue());
+	}
+
+	/**
+	 * Gets the minimum value.
+	 * 
+	 * @return the minimum value
+	 */
+	public double getMinimum() {
+		return minimum;
+	}
+
+	/**
+	 * Gets the maximum value.
+	 * 
+	 * @return the maximum value
+	 */
+	public double getMaximum() {
+		return maximum;
+	}
+
+	/**
+	 * Gets the step size of the editors.
+	 * 
+	 * @return the step size
+	 */
+	public double getStep() {
+		return step;
+	}
+
+	/**
+	 * Adds the given listener to the list of {@code double} listeners.
+	 * 
+	 * @param icl
+	 *            the listener to add
+	 */
+	public synchronized void addDoubleChangeListener(DoubleChangeListener icl) {
+		if (icl == null) {
+			return;
+		}
+		DoubleChangeListener[] old = getDoubleListenerArray();
+		DoubleChangeListener[] updated = new DoubleChangeListener[old.length + 1];
+		System.arraycopy(old, 0, updated, 0, old.length);
+		updated[old.length] = icl;
+		doubleListeners = updated;
+	}
+
+	/**
+	 * Removes the given listener from the list of {@code double} listeners.
+	 * 
+	 * @param icl
+	 *            the listener to remove
+	 */
+	public synchronized void removeDoubleChangeListener(DoubleChangeListener icl) {
+		DoubleChangeListener[] old = getDoubleListenerArray();
+		for (int i = old.length - 1; i >= 0; i--) {
+			if (old[i] == icl) {
+				DoubleChangeListener[] updated = new DoubleChangeListener[old.length - 1];
+				System.arraycopy(old, 0, updated, 0, i);
+				System.arraycopy(old, i + 1, updated, i, old.length - i - 1);
+				doubleListeners = updated;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Notifies all {@code double} listeners that the value has changed, or defers
+	 * the notification until the end of the current batch.
+	 * 
+	 * @param oldValue
+	 *            the previous value
+	 * @param newValue
+	 *            the new value
+	 */
+	protected void fireDoubleChange(double oldValue, double newValue) {
+		if (isBatching()) {
+			synchronized (this) {
+				if (isBatching()) {
+					if (!doublePending) {
+						doublePending = true;
+						batchOldDouble = oldValue;
+					}
+					return;
+				}
+			}
+		}
+		DoubleChangeListener[] ls = getDoubleListenerArray();
+		if (ls.length > 0 && isTiming()) {
+			if (PropertyMetrics.isEnabled()) {
+				PropertyMetrics.eventFired(this, ls.length);
+			}
+			for (int i = ls.length - 1; i >= 0; i--) {
+				long start = System.nanoTime();
+				ls[i].doubleChanged(this, oldValue, newValue);
+				timed(ls[i], System.nanoTime() - start);
+			}
+			return;
+		}
+		for (int i = ls.length - 1; i >= 0; i--) {
+			ls[i].doubleChanged(this, oldValue, newValue);
+		}
+	}
+
+	/**
+	 * Gets the current {@code double} listener array, which is empty (rather than
+	 * {@code null}) after deserialization.
+	 * 
+	 * @return the listener array, which must not be modified
+	 */
+	private DoubleChangeListener[] getDoubleListenerArray() {
+		DoubleChangeListener[] ls = doubleListeners;
+		return ls == null ? NO_LISTENERS : ls;
+	}
+
+	@Override
+	protected void commitBatch() {
+		boolean changed;
+		double oldValue;
+		synchronized (this) {
+			changed = doublePending;
+			oldValue = batchOldDouble;
+			doublePending = false;
+		}
+		if (changed) {
+			double current = getAsDouble();
+			if (Double.compare(oldValue, current) != 0) {
+				fireDoubleChange(oldValue, current);
+			}
+		}
+		super.commitBatch();
+	}
+
+	@Override
+	protected JSpinner createEditor() {
+		final SpinnerNumberModel model = new SpinnerNumberModel(getAsDouble(),
+				minimum, maximum, step);
+		model.addChangeListener(new ChangeListener() {
+			@Override
+			public void stateChanged(ChangeEvent ce) {
+				setDouble(model.getNumber().doubleValue());
+			}
+		});
+		return new JSpinner(model);
+	}
+
+	@Override
+	protected JLabel createViewer() {
+		return new JLabel();
+	}
+
+	@Override
+	protected void updateEditor(JSpinner editor) {
+		// Only box the value if the spinner is out of date.
+		SpinnerNumberModel model = (SpinnerNumberModel) editor.getModel();
+		double value = getAsDouble();
+		if (Double.compare(model.getNumber().doubleValue(), value) != 0) {
+			editor.setValue(Double.valueOf(value));
+		}
+		editor.setEnabled(isEnabled());
+	}
+
+	@Override
+	protected void updateViewer(JLabel viewer) {
+		viewer.setText(Double.toString(getAsDouble()));
+	}
+
+}
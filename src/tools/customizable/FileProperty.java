@@ -167,6 +167,12 @@ public class FileProperty extends
 		this.filter = filter;
 	}
 
+	@Override
+	boolean isNullable() {
+		// null means that no file is selected.
+		return true;
+	}
+
 	@Override
 	protected void updateEditor(FileEditor editor) {
 		editor.btnSelect
@@ -0,0 +1,410 @@
+package tools.customizable;
+
+import java.lang.ref.WeakReference;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * A property set that can look up its properties by name in constant time.
+ * The index follows changes to the contents of the set and to the names of
+ * its properties.
+ * <p>
+ * If several properties share a name, lookups return the first of them. The
+ * index is updated in place when properties are appended or renamed; most
+ * other modifications (and renaming a property that shares a name with
+ * another) cause it to be rebuilt, in linear time, on the next lookup. The
+ * properties refer to this set only weakly, so a set may be discarded while
+ * its properties live on.
+ * 
+ * @author William Chargin
+ * 
+ */
+public class IndexedPropertySet extends PropertySet {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * A name listener that forwards renames to a weakly referenced set, and
+	 * unregisters itself once that set has been collected.
+	 * 
+	 * @author William Chargin
+	 * 
+	 */
+	private static final class WeakNameListener implements NameChangeListener {
+
+		/**
+		 * The set to which renames are forwarded.
+		 */
+		private final WeakReference<IndexedPropertySet> set;
+
+		/**
+		 * Creates the listener.
+		 * 
+		 * @param set
+		 *            the set to which renames are forwarded
+		 */
+		private WeakNameListener(IndexedPropertySet set) {
+			this.set = new WeakReference<IndexedPropertySet>(set);
+		}
+
+		@Override
+		public void nameChanged(AbstractProperty<?> property, String oldName,
+				String newName) {
+			IndexedPropertySet s = set.get();
+			if (s == null) {
+				property.removeNameChangeListener(this);
+			} else {
+				s.renamed(property, oldName, newName);
+			}
+		}
+	}
+
+	/**
+	 * The index from name to property, or {@code null} if it must be rebuilt.
+	 */
+	private transient HashMap<String, AbstractProperty<?>> index;
+
+	/**
+	 * The value of {@link #modCount} when {@link #index} was last brought up
+	 * to date.
+	 */
+	private transient int indexedModCount;
+
+	/**
+	 * Whether two distinct properties in the index may share a name.
+	 */
+	private transient boolean duplicates;
+
+	/**
+	 * The properties on which {@link #nameListener} is registered.
+	 */
+	private transient Set<AbstractProperty<?>> watched;
+
+	/**
+	 * The listener that updates the index when a property is renamed.
+	 */
+	private transient NameChangeListener nameListener;
+
+	/**
+	 * Creates an empty property set.
+	 */
+	public IndexedPropertySet() {
+		super();
+	}
+
+	/**
+	 * Creates a property set with the given contents.
+	 * 
+	 * @param properties
+	 *            the contents
+	 */
+	public IndexedPropertySet(
+			Collection<? extends AbstractProperty<?>> properties) {
+		super(properties);
+	}
+
+	/**
+	 * Creates a property set with the given property.
+	 * 
+	 * @param property
+	 *            the property
+	 */
+	public IndexedPropertySet(AbstractProperty<?> property) {
+		super(property);
+	}
+
+	/**
+	 * Gets the property with the given name.
+	 * 
+	 * @param name
+	 *            the name of the property
+	 * @return the first property in this set with the given name, or
+	 *         {@code null} if there is none
+	 */
+	public AbstractProperty<?> get(String name) {
+		ensureIndex();
+		return index.get(name);
+	}
+
+	/**
+	 * Gets the property with the given name and type.
+	 * 
+	 * @param name
+	 *            the name of the property
+	 * @param type
+	 *            the expected class of the property
+	 * @return the first property in this set with the given name, or
+	 *         {@code null} if there is none
+	 * @throws ClassCastException
+	 *             if the property is not an instance of {@code type}
+	 */
+	public <P extends AbstractProperty<?>> P get(String name, Class<P> type)
+			throws ClassCastException {
+		return type.cast(get(name));
+	}
+
+	/**
+	 * Determines whether this set contains a property with the given name.
+	 * 
+	 * @param name
+	 *            the name
+	 * @return {@code true} if a property has the given name
+	 */
+	public boolean containsName(String name) {
+		ensureIndex();
+		return index.containsKey(name);
+	}
+
+	@Override
+	public boolean add(AbstractProperty<?> property) {
+		boolean current = isIndexCurrent();
+		super.add(property);
+		if (current) {
+			indexAppended(property);
+			indexedModCount = modCount;
+		}
+		return true;
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends AbstractProperty<?>> properties) {
+		boolean current = isIndexCurrent();
+		boolean changed = super.addAll(properties);
+		if (current) {
+			for (AbstractProperty<?> property : properties) {
+				indexAppended(property);
+			}
+			indexedModCount = modCount;
+		}
+		return changed;
+	}
+
+	@Override
+	public AbstractProperty<?> set(int position, AbstractProperty<?> property) {
+		AbstractProperty<?> old = super.set(position, property);
+		reindex();
+		return old;
+	}
+
+	@Override
+	public AbstractProperty<?> remove(int position) {
+		AbstractProperty<?> old = super.remove(position);
+		removed(old);
+		return old;
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		boolean changed = super.remove(o);
+		if (changed) {
+			removed((AbstractProperty<?>) o);
+		}
+		return changed;
+	}
+
+	@Override
+	public boolean removeAll(Collection<?> c) {
+		boolean changed = super.removeAll(c);
+		if (changed) {
+			reindex();
+		}
+		return changed;
+	}
+
+	@Override
+	public boolean retainAll(Collection<?> c) {
+		boolean changed = super.retainAll(c);
+		if (changed) {
+			reindex();
+		}
+		return changed;
+	}
+
+	@Override
+	protected void removeRange(int fromIndex, int toIndex) {
+		super.removeRange(fromIndex, toIndex);
+		reindex();
+	}
+
+	@Override
+	public void clear() {
+		super.clear();
+		reindex();
+	}
+
+	/**
+	 * Determines whether the index reflects the current contents of this set.
+	 * 
+	 * @return {@code true} if the index is up to date
+	 */
+	private boolean isIndexCurrent() {
+		return index != null && indexedModCount == modCount;
+	}
+
+	/**
+	 * Rebuilds the index if it is not up to date.
+	 */
+	private void ensureIndex() {
+		if (!isIndexCurrent()) {
+			reindex();
+		}
+	}
+
+	/**
+	 * Rebuilds the index, and registers or removes the name listener on each
+	 * property that has been added to or removed from this set.
+	 */
+	private void reindex() {
+		if (watched == null) {
+			watched = Collections
+					.newSetFromMap(new IdentityHashMap<AbstractProperty<?>, Boolean>());
+		}
+		Set<AbstractProperty<?>> members = Collections
+				.newSetFromMap(new IdentityHashMap<AbstractProperty<?>, Boolean>());
+		index = new HashMap<String, AbstractProperty<?>>();
+		duplicates = false;
+		for (AbstractProperty<?> property : this) {
+			if (property != null) {
+				members.add(property);
+				indexAppended(property);
+			}
+		}
+		for (Iterator<AbstractProperty<?>> it = watched.iterator(); it
+				.hasNext();) {
+			AbstractProperty<?> property = it.next();
+			if (!members.contains(property)) {
+				property.removeNameChangeListener(getNameListener());
+				it.remove();
+			}
+		}
+		indexedModCount = modCount;
+	}
+
+	/**
+	 * Adds the given property to the index, which is assumed to be up to date
+	 * with respect to the properties that precede it.
+	 * 
+	 * @param property
+	 *            the property that was appended
+	 */
+	private void indexAppended(AbstractProperty<?> property) {
+		if (property == null) {
+			return;
+		}
+		if (watched == null) {
+			watched = Collections
+					.newSetFromMap(new IdentityHashMap<AbstractProperty<?>, Boolean>());
+		}
+		if (watched.add(property)) {
+			property.addNameChangeListener(getNameListener());
+		}
+		String name = property.getName();
+		if (name != null) {
+			AbstractProperty<?> first = index.get(name);
+			if (first == null) {
+				index.put(name, property);
+			} else if (first != property) {
+				duplicates = true;
+			}
+		}
+	}
+
+	/**
+	 * Moves the index entry of a renamed property, if the index is up to
+	 * date. If the property shares its old or new name with another, the
+	 * first property with each name can only be found by a scan, so the index
+	 * is rebuilt instead.
+	 * 
+	 * @param property
+	 *            the renamed property
+	 * @param oldName
+	 *            the old name
+	 * @param newName
+	 *            the new name
+	 */
+	private void renamed(AbstractProperty<?> property, String oldName,
+			String newName) {
+		if (!isIndexCurrent()) {
+			return;
+		}
+		if (oldName != null && index.get(oldName) == property) {
+			if (duplicates) {
+				index = null;
+				return;
+			}
+			index.remove(oldName);
+		}
+		if (newName != null) {
+			AbstractProperty<?> first = index.get(newName);
+			if (first == null) {
+				index.put(newName, property);
+			} else if (first != property) {
+				index = null;
+			}
+		}
+	}
+
+	/**
+	 * Updates the index after the given property was removed from one
+	 * position in this set.
+	 * 
+	 * @param property
+	 *            the property that was removed
+	 */
+	private void removed(AbstractProperty<?> property) {
+		if (property == null) {
+			if (isIndexCurrentExceptLastChange()) {
+				indexedModCount = modCount;
+			}
+			return;
+		}
+		if (contains(property)) {
+			// It is still listed elsewhere, so the index entry (if it pointed
+			// here) may now belong to a later position.
+			index = null;
+			return;
+		}
+		if (watched != null && watched.remove(property)) {
+			property.removeNameChangeListener(getNameListener());
+		}
+		if (isIndexCurrentExceptLastChange()) {
+			String name = property.getName();
+			if (name != null && index.get(name) == property) {
+				// Another property may share the name.
+				index = null;
+			} else {
+				indexedModCount = modCount;
+			}
+		}
+	}
+
+	/**
+	 * Determines whether the index was up to date before the most recent
+	 * structural modification.
+	 * 
+	 * @return {@code true} if only one modification has happened since the
+	 *         index was last brought up to date
+	 */
+	private boolean isIndexCurrentExceptLastChange() {
+		return index != null && indexedModCount == modCount - 1;
+	}
+
+	/**
+	 * Gets the listener that updates the index when a property is renamed.
+	 * 
+	 * @return the name listener
+	 */
+	private NameChangeListener getNameListener() {
+		if (nameListener == null) {
+			nameListener = new WeakNameListener(this);
+		}
+		return nameListener;
+	}
+}
@@ -0,0 +1,27 @@
+package tools.customizable;
+
+import java.util.EventListener;
+
+/**
+ * A listener notified when the value of an {@link IntProperty} changes. The
+ * values are delivered unboxed.
+ * 
+ * @author William Chargin
+ * 
+ */
+public interface IntChangeListener extends EventListener {
+
+	/**
+	 * Invoked after the value of a property changes. The old and new values
+	 * are never equal.
+	 * 
+	 * @param property
+	 *            the property whose value changed
+	 * @param oldValue
+	 *            the previous value
+	 * @param newValue
+	 *            the new (current) value
+	 */
+	public void intChanged(IntProperty property, int oldValue, int newValue);
+
+}
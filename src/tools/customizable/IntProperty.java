@@ -0,0 +1,326 @@
+package tools.customizable;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import javax.swing.JLabel;
+import javax.swing.JSpinner;
+import javax.swing.SpinnerNumberModel;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+/**
+ * A property holding an {@code int} within a fixed range. The value is stored
+ * unboxed; {@link #getAsInt()}, {@link #setInt(int)}, and
+ * {@link IntChangeListener}s never box it, so they are suitable for values that
+ * change at a high rate. The {@link #getValue()} and
+ * {@link #setValue(Integer)} methods and {@link ValueChangeListener}s are also
+ * supported, at the cost of boxing. The value may be set from any thread.
+ * 
+ * @author William Chargin
+ * 
+ */
+public class IntProperty extends
+		AbstractSwingProperty<Integer, JSpinner, JLabel> {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * An empty array of listeners, shared by all properties with no listeners.
+	 */
+	private static final IntChangeListener[] NO_LISTENERS = new IntChangeListener[0];
+
+	/**
+	 * The minimum value.
+	 */
+	private final int minimum;
+
+	/**
+	 * The maximum value.
+	 */
+	private final int maximum;
+
+	/**
+	 * The current value. (The inherited {@link #value} field is not used.)
+	 */
+	private volatile int intValue;
+
+	/**
+	 * Compares and sets {@link #intValue}.
+	 */
+	private static final AtomicIntegerFieldUpdater<IntProperty> VALUE_UPDATER = AtomicIntegerFieldUpdater
+			.newUpdater(IntProperty.class, "intValue"); //$NON-NLS-1$
+
+	/**
+	 * The {@code int} listeners on this property. The array is never modified
+	 * once published.
+	 */
+	private transient volatile IntChangeListener[] intListeners = NO_LISTENERS;
+
+	/**
+	 * Whether the value changed during the current batch. This is guarded by
+	 * the lock of this property.
+	 */
+	private transient boolean intPending;
+
+	/**
+	 * The value this property had when it first changed during the current
+	 * batch. This is guarded by the lock of this property.
+	 */
+	private transient int batchOldInt;
+
+	/**
+	 * Creates the property with the given name and value, and no limits other
+	 * than those of the {@code int} type.
+	 * 
+	 * @param name
+	 *            the name
+	 * @param value
+	 *            the value
+	 */
+	public IntProperty(String name, int value) {
+		this(name, Integer.MIN_VALUE, value, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Creates the property with all required parameters.
+	 * 
+	 * @param name
+	 *            the name
+	 * @param minimum
+	 *            the minimum value
+	 * @param value
+	 *            the starting value
+	 * @param maximum
+	 *            the maximum value
+	 * @throws IllegalArgumentException
+	 *             if {@code minimum <= value <= maximum} does not hold
+	 */
+	public IntProperty(String name, int minimum, int value, int maximum)
+			throws IllegalArgumentException {
+		super(name, null);
+		if (minimum > value || value > maximum) {
+			throw new IllegalArgumentException("value out of range"); //$NON-NLS-1$
+		}
+		this.minimum = minimum;
+		this.maximum = maximum;
+		this.intValue = value;
+	}
+
+	/**
+	 * Gets the value of this property without boxing it.
+	 * 
+	 * @return the current value
+	 */
+	public int getAsInt() {
+		return intValue;
+	}
+
+	/**
+	 * Sets the value of this property without boxing it. Values outside the
+	 * range of this property are clamped to the nearest limit. If the value
+	 * does not change, nothing happens.
+	 * <p>
+	 * This method may be called from any thread.
+	 * 
+	 * @param value
+	 *            the new value
+	 */
+	public void setInt(int value) {
+		if (value < minimum) {
+			value = minimum;
+		} else if (value > maximum) {
+			value = maximum;
+		}
+		int oldValue;
+		do {
+			oldValue = intValue;
+			if (oldValue == value) {
+				return;
+			}
+		} while (!VALUE_UPDATER.compareAndSet(this, oldValue, value));
+		if (PropertyMetrics.isEnabled()) {
+			PropertyMetrics.valueChanged(this);
+		}
+		fireIntChange(oldValue, value);
+		if (hasValueChangeListeners()) {
+			fireValueChange(Integer.valueOf(oldValue), Integer.valueOf(value));
+		}
+		refreshLater();
+	}
+
+	/**
+	 * Gets the value of this property, boxed. Prefer {@link #getAsInt()}.
+	 * 
+	 * @return the current value
+	 */
+	@Override
+	public Integer getValue() {
+		return Integer.valueOf(intValue);
+	}
+
+	/**
+	 * Sets the value of this property. Prefer {@link #setInt(int)}.
+	 * 
+	 * @param value
+	 *            the new value; {@code null} is treated as zero
+	 */
+	@Override
+	public void setValue(Integer value) {
+		setInt(value == null ? 0 : value.intValue());
+	}
+
+	/**
+	 * Gets the minimum value.
+	 * 
+	 * @return the minimum value
+	 */
+	public int getMinimum() {
+		return minimum;
+	}
+
+	/**
+	 * Gets the maximum value.
+	 * 
+	 * @return the maximum value
+	 */
+	public int getMaximum() {
+		return maximum;
+	}
+
+	/**
+	 * Adds the given listener to the list of {@code int} listeners.
+	 * 
+	 * @param icl
+	 *            the listener to add
+	 */
+	public synchronized void addIntChangeListener(IntChangeListener icl) {
+		if (icl == null) {
+			return;
+		}
+		IntChangeListener[] old = getIntListenerArray();
+		IntChangeListener[] updated = new IntChangeListener[old.length + 1];
+		System.arraycopy(old, 0, updated, 0, old.length);
+		updated[old.length] = icl;
+		intListeners = updated;
+	}
+
+	/**
+	 * Removes the given listener from the list of {@code int} listeners.
+	 * 
+	 * @param icl
+	 *            the listener to remove
+	 */
+	public synchronized void removeIntChangeListener(IntChangeListener icl) {
+		IntChangeListener[] old = getIntListenerArray();
+		for (int i = old.length - 1; i >= 0; i--) {
+			if (old[i] == icl) {
+				IntChangeListener[] updated = new IntChangeListener[old.length - 1];
+				System.arraycopy(old, 0, updated, 0, i);
+				System.arraycopy(old, i + 1, updated, i, old.length - i - 1);
+				intListeners = updated;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Notifies all {@code int} listeners that the value has changed, or defers
+	 * the notification until the end of the current batch.
+	 * 
+	 * @param oldValue
+	 *            the previous value
+	 * @param newValue
+	 *            the new value
+	 */
+	protected void fireIntChange(int oldValue, int newValue) {
+		if (isBatching()) {
+			synchronized (this) {
+				if (isBatching()) {
+					if (!intPending) {
+						intPending = true;
+						batchOldInt = oldValue;
+					}
+					return;
+				}
+			}
+		}
+		IntChangeListener[] ls = getIntListenerArray();
+		if (ls.length > 0 && isTiming()) {
+			if (PropertyMetrics.isEnabled()) {
+				PropertyMetrics.eventFired(this, ls.length);
+			}
+			for (int i = ls.length - 1; i >= 0; i--) {
+				long start = System.nanoTime();
+				ls[i].intChanged(this, oldValue, newValue);
+				timed(ls[i], System.nanoTime() - start);
+			}
+			return;
+		}
+		for (int i = ls.length - 1; i >= 0; i--) {
+			ls[i].intChanged(this, oldValue, newValue);
+		}
+	}
+
+	/**
+	 * Gets the current {@code int} listener array, which is empty (rather than
+	 * {@code null}) after deserialization.
+	 * 
+	 * @return the listener array, which must not be modified
+	 */
+	private IntChangeListener[] getIntListenerArray() {
+		IntChangeListener[] ls = intListeners;
+		return ls == null ? NO_LISTENERS : ls;
+	}
+
+	@Override
+	protected void commitBatch() {
+		boolean changed;
+		int oldValue;
+		synchronized (this) {
+			changed = intPending;
+			oldValue = batchOldInt;
+			intPending = false;
+		}
+		if (changed && oldValue != intValue) {
+			fireIntChange(oldValue, intValue);
+		}
+		super.commitBatch();
+	}
+
+	@Override
+	protected JSpinner createEditor() {
+		final SpinnerNumberModel model = new SpinnerNumberModel(intValue,
+				minimum, maximum, 1);
+		model.addChangeListener(new ChangeListener() {
+			@Override
+			public void stateChanged(ChangeEvent ce) {
+				setInt(model.getNumber().intValue());
+			}
+		});
+		return new JSpinner(model);
+	}
+
+	@Override
+	protected JLabel createViewer() {
+		return new JLabel();
+	}
+
+	@Override
+	protected void updateEditor(JSpinner editor) {
+		// Only box the value if the spinner is out of date.
+		SpinnerNumberModel model = (SpinnerNumberModel) editor.getModel();
+		if (model.getNumber().intValue() != intValue) {
+			editor.setValue(Integer.valueOf(intValue));
+		}
+		editor.setEnabled(isEnabled());
+	}
+
+	@Override
+	protected void updateViewer(JLabel viewer) {
+		viewer.setText(Integer.toString(intValue));
+	}
+
+}
@@ -1,13 +1,23 @@
 package tools.customizable;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+
 import javax.swing.JTextField;
 import javax.swing.text.AbstractDocument;
 import javax.swing.text.AttributeSet;
 import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
 import javax.swing.text.DocumentFilter;
 
 /**
- * A text property of limited length.
+ * A text property of limited length. The length may be limited in characters
+ * or, for text that is stored in fixed-width fields, in the bytes of its
+ * encoding in a given charset. Text that is typed, pasted, or set beyond the
+ * limit is truncated.
  * 
  * @author William Chargin
  * 
@@ -24,6 +34,184 @@ public class LimitedTextProperty extends TextProperty {
 	 */
 	private final int maxChars;
 
+	/**
+	 * The maximum number of encoded bytes permitted, or {@code -1} if there is
+	 * no byte limit.
+	 */
+	private final int maxBytes;
+
+	/**
+	 * The name of the charset in which bytes are counted, or {@code null} if
+	 * there is no byte limit.
+	 */
+	private final String charsetName;
+
+	/**
+	 * Truncates edits to the limit. When bytes are limited, the filter keeps
+	 * a count of the bytes in the document, so that an edit encodes only the
+	 * text it removes and inserts. The count is exact for stateless charsets
+	 * (such as UTF-8 and the single-byte charsets).
+	 * 
+	 * @author William Chargin
+	 * 
+	 */
+	private class LimitFilter extends DocumentFilter {
+
+		/**
+		 * The encoder used to count bytes, or {@code null} if there is no byte
+		 * limit.
+		 */
+		private final CharsetEncoder encoder = newEncoder();
+
+		/**
+		 * The buffer into which text is encoded.
+		 */
+		private final ByteBuffer buffer = encoder == null ? null : ByteBuffer
+				.allocate(maxBytes);
+
+		/**
+		 * The number of bytes in the encoded document.
+		 */
+		private int bytes;
+
+		/**
+		 * Creates the filter for the given document.
+		 * 
+		 * @param document
+		 *            the document, whose text is counted
+		 * @throws BadLocationException
+		 *             never
+		 */
+		private LimitFilter(Document document) throws BadLocationException {
+			if (encoder != null) {
+				bytes = countBytes(document.getText(0, document.getLength()));
+			}
+		}
+
+		@Override
+		public void insertString(FilterBypass fb, int offset, String text,
+				AttributeSet attrs) throws BadLocationException {
+			replace(fb, offset, 0, text, attrs);
+		}
+
+		@Override
+		public void remove(FilterBypass fb, int offset, int length)
+				throws BadLocationException {
+			replace(fb, offset, length, null, null);
+		}
+
+		@Override
+		public void replace(FilterBypass fb, int offset, int length,
+				String text, AttributeSet attrs) throws BadLocationException {
+			Document document = fb.getDocument();
+			String fitted = text == null ? new String() : text;
+			fitted = fitChars(fitted, maxChars
+					- (document.getLength() - length));
+			boolean joins = encoder != null
+					&& joinsPair(document, offset, length, fitted);
+			int removed = 0;
+			int added = 0;
+			if (joins) {
+				fitted = fitJoined(document, offset, length, fitted);
+			} else if (encoder != null) {
+				removed = countBytes(document.getText(offset, length));
+				if (fitted.length() > 0) {
+					fitted = fitBytes(encoder, buffer, maxBytes
+							- (bytes - removed), fitted);
+					added = buffer.position();
+				}
+			}
+			if (length == 0 && fitted.length() == 0) {
+				return;
+			}
+			// Replacing fires a removal and an insertion; notify once.
+			beginBatch();
+			try {
+				fb.replace(offset, length, fitted, attrs);
+			} finally {
+				endBatch();
+			}
+			if (joins) {
+				bytes = countBytes(document.getText(0, document.getLength()));
+			} else if (encoder != null) {
+				bytes += added - removed;
+			}
+		}
+
+		/**
+		 * Truncates the given text so that the document fits when the text
+		 * replaces the given range. This encodes the whole document for each
+		 * length tried, so it is used only when a surrogate pair may be split
+		 * or joined.
+		 * 
+		 * @param document
+		 *            the document
+		 * @param offset
+		 *            the offset of the range
+		 * @param length
+		 *            the length of the range
+		 * @param text
+		 *            the replacement text
+		 * @return the longest prefix of the text that fits
+		 * @throws BadLocationException
+		 *             if the range is not in the document
+		 */
+		private String fitJoined(Document document, int offset, int length,
+				String text) throws BadLocationException {
+			String before = document.getText(0, offset);
+			String after = document.getText(offset + length,
+					document.getLength() - offset - length);
+			int low = 0;
+			int high = text.length();
+			while (low < high) {
+				int middle = (low + high + 1) >>> 1;
+				if (fits(before + text.substring(0, middle) + after)) {
+					low = middle;
+				} else {
+					high = middle - 1;
+				}
+			}
+			if (low > 0 && low < text.length()
+					&& Character.isHighSurrogate(text.charAt(low - 1))
+					&& Character.isLowSurrogate(text.charAt(low))) {
+				low--;
+			}
+			return text.substring(0, low);
+		}
+
+		/**
+		 * Determines whether the given text fits in the byte limit when
+		 * encoded.
+		 * 
+		 * @param text
+		 *            the text
+		 * @return {@code true} if the text fits
+		 */
+		private boolean fits(String text) {
+			encoder.reset();
+			buffer.clear();
+			return !encoder.encode(CharBuffer.wrap(text), buffer, true)
+					.isOverflow();
+		}
+
+		/**
+		 * Counts the bytes of the given text when encoded.
+		 * 
+		 * @param text
+		 *            the text, which must fit in the buffer
+		 * @return the number of bytes
+		 */
+		private int countBytes(String text) {
+			if (text.length() == 0) {
+				return 0;
+			}
+			encoder.reset();
+			buffer.clear();
+			encoder.encode(CharBuffer.wrap(text), buffer, true);
+			return buffer.position();
+		}
+	}
+
 	/**
 	 * Creates the property with a blank name and text, and the given maximum
 	 * character count.
@@ -34,6 +222,8 @@ public class LimitedTextProperty extends TextProperty {
 	public LimitedTextProperty(int maxChars) {
 		super();
 		this.maxChars = maxChars;
+		this.maxBytes = -1;
+		this.charsetName = null;
 	}
 
 	/**
@@ -50,29 +240,191 @@ public class LimitedTextProperty extends TextProperty {
 	public LimitedTextProperty(String name, String value, int maxChars) {
 		super(name, value);
 		this.maxChars = maxChars;
+		this.maxBytes = -1;
+		this.charsetName = null;
+		this.value = truncate(this.value);
+	}
+
+	/**
+	 * Creates the property with the given name and starting value, limited to
+	 * the given number of bytes when encoded in the given charset (e.g.,
+	 * UTF-8). Characters that the charset cannot encode are counted as its
+	 * replacement bytes.
+	 * 
+	 * @param name
+	 *            the name
+	 * @param value
+	 *            the value
+	 * @param maxBytes
+	 *            the maximum byte count
+	 * @param charset
+	 *            the charset in which bytes are counted
+	 * @throws IllegalArgumentException
+	 *             if the charset cannot encode
+	 */
+	public LimitedTextProperty(String name, String value, int maxBytes,
+			Charset charset) throws IllegalArgumentException {
+		super(name, value);
+		if (!charset.canEncode()) {
+			throw new IllegalArgumentException("cannot encode: " + charset); //$NON-NLS-1$
+		}
+		this.maxChars = maxBytes;
+		this.maxBytes = maxBytes;
+		this.charsetName = charset.name();
+		this.value = truncate(this.value);
+	}
+
+	@Override
+	protected Document createDocument() {
+		Document document = super.createDocument();
+		try {
+			((AbstractDocument) document).setDocumentFilter(new LimitFilter(
+					document));
+		} catch (BadLocationException ble) {
+			// The whole document is always a valid range.
+			throw new IllegalStateException(ble);
+		}
+		return document;
 	}
 
 	@Override
 	protected JTextField createEditor() {
 		final JTextField editor = super.createEditor();
 		editor.setColumns(maxChars);
-		((AbstractDocument) editor.getDocument())
-				.setDocumentFilter(new DocumentFilter() {
-					@Override
-					public void replace(FilterBypass fb, int offset,
-							int length, String text, AttributeSet attrs)
-							throws BadLocationException {
-						super.replace(fb, offset, length, new String(), attrs);
-						int offsetoffset = 0;
-						for (char c : text.toCharArray()) {
-							if (editor.getText().length() < maxChars) {
-								super.replace(fb, offset + (offsetoffset++), 0,
-										Character.toString(c), attrs);
-							}
-						}
-					}
-
-				});
 		return editor;
 	}
+
+	/**
+	 * Sets the value of this property, truncated to the limit.
+	 * 
+	 * @param value
+	 *            the new value
+	 */
+	@Override
+	public void setValue(String value) {
+		super.setValue(truncate(value));
+	}
+
+	/**
+	 * Truncates the given text to the limit.
+	 * 
+	 * @param text
+	 *            the text, or {@code null}
+	 * @return the truncated text, or {@code null} if the text was
+	 *         {@code null}
+	 */
+	private String truncate(String text) {
+		if (text == null) {
+			return null;
+		}
+		String fitted = fitChars(text, maxChars);
+		CharsetEncoder encoder = newEncoder();
+		if (encoder != null) {
+			fitted = fitBytes(encoder, ByteBuffer.allocate(maxBytes),
+					maxBytes, fitted);
+		}
+		return fitted;
+	}
+
+	/**
+	 * Creates an encoder for counting bytes.
+	 * 
+	 * @return the encoder, or {@code null} if there is no byte limit
+	 */
+	private CharsetEncoder newEncoder() {
+		if (charsetName == null) {
+			return null;
+		}
+		return Charset.forName(charsetName).newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	/**
+	 * Truncates the given text to the given number of characters, without
+	 * splitting a surrogate pair.
+	 * 
+	 * @param text
+	 *            the text
+	 * @param count
+	 *            the number of characters available
+	 * @return the longest prefix that fits
+	 */
+	private static String fitChars(String text, int count) {
+		if (text.length() <= count) {
+			return text;
+		}
+		if (count <= 0) {
+			return new String();
+		}
+		if (Character.isHighSurrogate(text.charAt(count - 1))) {
+			count--;
+		}
+		return text.substring(0, count);
+	}
+
+	/**
+	 * Truncates the given text so that it fits in the given number of bytes
+	 * when encoded. Encoding stops at the first character that does not fit,
+	 * so the cost is proportional to the text that is kept. Afterward, the
+	 * position of the buffer is the number of bytes used.
+	 * 
+	 * @param encoder
+	 *            the encoder
+	 * @param buffer
+	 *            the buffer, whose capacity is the byte limit
+	 * @param available
+	 *            the number of bytes available
+	 * @param text
+	 *            the text to add
+	 * @return the longest prefix of the text that fits
+	 */
+	private static String fitBytes(CharsetEncoder encoder, ByteBuffer buffer,
+			int available, String text) {
+		encoder.reset();
+		buffer.clear();
+		if (available <= 0) {
+			return new String();
+		}
+		buffer.limit(Math.min(available, buffer.capacity()));
+		CharBuffer in = CharBuffer.wrap(text);
+		if (encoder.encode(in, buffer, true).isOverflow()) {
+			return text.substring(0, in.position());
+		}
+		return text;
+	}
+
+	/**
+	 * Determines whether replacing the given range of a document with the
+	 * given text may split or join a surrogate pair, so that the bytes of the
+	 * result are not the bytes of its parts.
+	 * 
+	 * @param document
+	 *            the document
+	 * @param offset
+	 *            the offset of the range
+	 * @param length
+	 *            the length of the range
+	 * @param text
+	 *            the replacement text
+	 * @return {@code true} if a surrogate is at an edge of the replacement
+	 * @throws BadLocationException
+	 *             if the range is not in the document
+	 */
+	private static boolean joinsPair(Document document, int offset,
+			int length, String text) throws BadLocationException {
+		if (offset > 0
+				&& Character.isHighSurrogate(document.getText(offset - 1, 1)
+						.charAt(0))) {
+			return true;
+		}
+		if (offset + length < document.getLength()
+				&& Character.isLowSurrogate(document.getText(offset + length,
+						1).charAt(0))) {
+			return true;
+		}
+		return text.length() > 0
+				&& (Character.isLowSurrogate(text.charAt(0)) || Character
+						.isHighSurrogate(text.charAt(text.length() - 1)));
+	}
 }
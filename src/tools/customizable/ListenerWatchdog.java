@@ -0,0 +1,157 @@
+package tools.customizable;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reports slow calls made by properties: change and value listener
+ * invocations, and updates of individual editors and viewers. A slow call on
+ * the event dispatch thread freezes the user interface, so the watchdog names
+ * the property and the listener or component responsible.
+ * <p>
+ * The watchdog is disabled until a {@linkplain #setThreshold(long, TimeUnit)
+ * threshold} is set. Calls that take at least that long are passed to the
+ * {@linkplain #setReporter(Reporter) reporter}, on the thread that made the
+ * call, after the call returns. The default reporter logs a warning with
+ * {@link java.util.logging}.
+ * 
+ * @author William Chargin
+ * 
+ */
+public final class ListenerWatchdog {
+
+	/**
+	 * Receives reports of slow calls.
+	 * 
+	 * @author William Chargin
+	 * 
+	 */
+	public interface Reporter {
+
+		/**
+		 * Invoked after a call took at least the threshold.
+		 * 
+		 * @param property
+		 *            the property that made the call
+		 * @param target
+		 *            the listener, editor, or viewer that was called
+		 * @param nanos
+		 *            the duration of the call, in nanoseconds
+		 */
+		public void slowCall(AbstractProperty<?> property, Object target,
+				long nanos);
+	}
+
+	/**
+	 * The reporter that logs a warning for each slow call.
+	 */
+	private static final Reporter LOGGING_REPORTER = new Reporter() {
+		@Override
+		public void slowCall(AbstractProperty<?> property, Object target,
+				long nanos) {
+			Logger logger = Logger.getLogger(ListenerWatchdog.class.getName());
+			if (logger.isLoggable(Level.WARNING)) {
+				logger.warning("slow call to " + target.getClass().getName() //$NON-NLS-1$
+						+ " from property \"" + property.getName() //$NON-NLS-1$
+						+ "\" took " + TimeUnit.NANOSECONDS.toMillis(nanos) //$NON-NLS-1$
+						+ " ms on thread " + Thread.currentThread().getName()); //$NON-NLS-1$
+			}
+		}
+	};
+
+	/**
+	 * The threshold, in nanoseconds, or {@code 0} if the watchdog is
+	 * disabled.
+	 */
+	private static volatile long threshold;
+
+	/**
+	 * The current reporter.
+	 */
+	private static volatile Reporter reporter = LOGGING_REPORTER;
+
+	/**
+	 * This class is not instantiable.
+	 */
+	private ListenerWatchdog() {
+		super();
+	}
+
+	/**
+	 * Determines whether the watchdog is enabled.
+	 * 
+	 * @return {@code true} if a threshold is set
+	 */
+	public static boolean isEnabled() {
+		return threshold > 0;
+	}
+
+	/**
+	 * Gets the threshold above which calls are reported.
+	 * 
+	 * @param unit
+	 *            the unit of the result
+	 * @return the threshold, or {@code 0} if the watchdog is disabled
+	 */
+	public static long getThreshold(TimeUnit unit) {
+		return unit.convert(threshold, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Sets the threshold above which calls are reported, enabling or disabling
+	 * the watchdog.
+	 * 
+	 * @param threshold
+	 *            the threshold, or {@code 0} to disable the watchdog
+	 * @param unit
+	 *            the unit of {@code threshold}
+	 * @throws IllegalArgumentException
+	 *             if the threshold is negative
+	 */
+	public static void setThreshold(long threshold, TimeUnit unit)
+			throws IllegalArgumentException {
+		if (threshold < 0) {
+			throw new IllegalArgumentException("negative threshold"); //$NON-NLS-1$
+		}
+		ListenerWatchdog.threshold = unit.toNanos(threshold);
+	}
+
+	/**
+	 * Gets the current reporter.
+	 * 
+	 * @return the reporter
+	 */
+	public static Reporter getReporter() {
+		return reporter;
+	}
+
+	/**
+	 * Sets the reporter to which slow calls are passed.
+	 * 
+	 * @param reporter
+	 *            the new reporter, or {@code null} to restore the default,
+	 *            which logs a warning
+	 */
+	public static void setReporter(Reporter reporter) {
+		ListenerWatchdog.reporter = reporter == null ? LOGGING_REPORTER
+				: reporter;
+	}
+
+	/**
+	 * Reports the given call if it took at least the threshold.
+	 * 
+	 * @param property
+	 *            the property that made the call
+	 * @param target
+	 *            the listener, editor, or viewer that was called
+	 * @param nanos
+	 *            the duration of the call, in nanoseconds
+	 */
+	static void check(AbstractProperty<?> property, Object target, long nanos) {
+		long t = threshold;
+		if (t > 0 && nanos >= t) {
+			reporter.slowCall(property, target, nanos);
+		}
+	}
+}
@@ -0,0 +1,328 @@
+package tools.customizable;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+import javax.swing.JLabel;
+import javax.swing.JSpinner;
+import javax.swing.SpinnerNumberModel;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+/**
+ * A property holding a {@code long} within a fixed range. The value is stored
+ * unboxed; {@link #getAsLong()}, {@link #setLong(long)}, and
+ * {@link LongChangeListener}s never box it, so they are suitable for values
+ * that change at a high rate. The {@link #getValue()} and
+ * {@link #setValue(Long)} methods and {@link ValueChangeListener}s are also
+ * supported, at the cost of boxing. The value may be set from any thread.
+ * 
+ * @author William Chargin
+ * 
+ */
+public class LongProperty extends
+		AbstractSwingProperty<Long, JSpinner, JLabel> {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * An empty array of listeners, shared by all properties with no listeners.
+	 */
+	private static final LongChangeListener[] NO_LISTENERS = new LongChangeListener[0];
+
+	/**
+	 * The minimum value.
+	 */
+	private final long minimum;
+
+	/**
+	 * The maximum value.
+	 */
+	private final long maximum;
+
+	/**
+	 * The current value. (The inherited {@link #value} field is not used.)
+	 */
+	private volatile long longValue;
+
+	/**
+	 * Compares and sets {@link #longValue}.
+	 */
+	private static final AtomicLongFieldUpdater<LongProperty> VALUE_UPDATER = AtomicLongFieldUpdater
+			.newUpdater(LongProperty.class, "longValue"); //$NON-NLS-1$
+
+	/**
+	 * The {@code long} listeners on this property. The array is never modified
+	 * once published.
+	 */
+	private transient volatile LongChangeListener[] longListeners = NO_LISTENERS;
+
+	/**
+	 * Whether the value changed during the current batch. This is guarded by
+	 * the lock of this property.
+	 */
+	private transient boolean longPending;
+
+	/**
+	 * The value this property had when it first changed during the current
+	 * batch. This is guarded by the lock of this property.
+	 */
+	private transient long batchOldLong;
+
+	/**
+	 * Creates the property with the given name and value, and no limits other
+	 * than those of the {@code long} type.
+	 * 
+	 * @param name
+	 *            the name
+	 * @param value
+	 *            the value
+	 */
+	public LongProperty(String name, long value) {
+		this(name, Long.MIN_VALUE, value, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Creates the property with all required parameters.
+	 * 
+	 * @param name
+	 *            the name
+	 * @param minimum
+	 *            the minimum value
+	 * @param value
+	 *            the starting value
+	 * @param maximum
+	 *            the maximum value
+	 * @throws IllegalArgumentException
+	 *             if {@code minimum <= value <= maximum} does not hold
+	 */
+	public LongProperty(String name, long minimum, long value,
+			long maximum)
+			throws IllegalArgumentException {
+		super(name, null);
+		if (minimum > value || value > maximum) {
+			throw new IllegalArgumentException("value out of range"); //$NON-NLS-1$
+		}
+		this.minimum = minimum;
+		this.maximum = maximum;
+		this.longValue = value;
+	}
+
+	/**
+	 * Gets the value of this property without boxing it.
+	 * 
+	 * @return the current value
+	 */
+	public long getAsLong() {
+		return longValue;
+	}
+
+	/**
+	 * Sets the value of this property without boxing it. Values outside the
+	 * range of this property are clamped to the nearest limit. If the value
+	 * does not change, nothing happens.
+	 * <p>
+	 * This method may be called from any thread.
+	 * 
+	 * @param value
+	 *            the new value
+	 */
+	public void setLong(long value) {
+		if (value < minimum) {
+			value = minimum;
+		} else if (value > maximum) {
+			value = maximum;
+		}
+		long oldValue;
+		do {
+			oldValue = longValue;
+			if (oldValue == value) {
+				return;
+			}
+		} while (!VALUE_UPDATER.compareAndSet(this, oldValue, value));
+		if (PropertyMetrics.isEnabled()) {
+			PropertyMetrics.valueChanged(this);
+		}
+		fireLongChange(oldValue, value);
+		if (hasValueChangeListeners()) {
+			fireValueChange(Long.valueOf(oldValue), Long.valueOf(value));
+		}
+		refreshLater();
+	}
+
+	/**
+	 * Gets the value of this property, boxed. Prefer {@link #getAsLong()}.
+	 * 
+	 * @return the current value
+	 */
+	@Override
+	public Long getValue() {
+		return Long.valueOf(longValue);
+	}
+
+	/**
+	 * Sets the value of this property. Prefer {@link #setLong(long)}.
+	 * 
+	 * @param value
+	 *            the new value; {@code null} is treated as zero
+	 */
+	@Override
+	public void setValue(Long value) {
+		setLong(value == null ? 0 : value.longValue());
+	}
+
+	/**
+	 * Gets the minimum value.
+	 * 
+	 * @return the minimum value
+	 */
+	public long getMinimum() {
+		return minimum;
+	}
+
+	/**
+	 * Gets the maximum value.
+	 * 
+	 * @return the maximum value
+	 */
+	public long getMaximum() {
+		return maximum;
+	}
+
+	/**
+	 * Adds the given listener to the list of {@code long} listeners.
+	 * 
+	 * @param icl
+	 *            the listener to add
+	 */
+	public synchronized void addLongChangeListener(LongChangeListener icl) {
+		if (icl == null) {
+			return;
+		}
+		LongChangeListener[] old = getLongListenerArray();
+		LongChangeListener[] updated = new LongChangeListener[old.length + 1];
+		System.arraycopy(old, 0, updated, 0, old.length);
+		updated[old.length] = icl;
+		longListeners = updated;
+	}
+
+	/**
+	 * Removes the given listener from the list of {@code long} listeners.
+	 * 
+	 * @param icl
+	 *            the listener to remove
+	 */
+	public synchronized void removeLongChangeListener(LongChangeListener icl) {
+		LongChangeListener[] old = getLongListenerArray();
+		for (int i = old.length - 1; i >= 0; i--) {
+			if (old[i] == icl) {
+				LongChangeListener[] updated = new LongChangeListener[old.length - 1];
+				System.arraycopy(old, 0, updated, 0, i);
+				System.arraycopy(old, i + 1, updated, i, old.length - i - 1);
+				longListeners = updated;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Notifies all {@code long} listeners that the value has changed, or defers
+	 * the notification until the end of the current batch.
+	 * 
+	 * @param oldValue
+	 *            the previous value
+	 * @param newValue
+	 *            the new value
+	 */
+	protected void fireLongChange(long oldValue, long newValue) {
+		if (isBatching()) {
+			synchronized (this) {
+				if (isBatching()) {
+					if (!longPending) {
+						longPending = true;
+						batchOldLong = oldValue;
+					}
+					return;
+				}
+			}
+		}
+		LongChangeListener[] ls = getLongListenerArray();
+		if (ls.length > 0 && isTiming()) {
+			if (PropertyMetrics.isEnabled()) {
+				PropertyMetrics.eventFired(this, ls.length);
+			}
+			for (int i = ls.length - 1; i >= 0; i--) {
+				long start = System.nanoTime();
+				ls[i].longChanged(this, oldValue, newValue);
+				timed(ls[i], System.nanoTime() - start);
+			}
+			return;
+		}
+		for (int i = ls.length - 1; i >= 0; i--) {
+			ls[i].longChanged(this, oldValue, newValue);
+		}
+	}
+
+	/**
+	 * Gets the current {@code long} listener array, which is empty (rather than
+	 * {@code null}) after deserialization.
+	 * 
+	 * @return the listener array, which must not be modified
+	 */
+	private LongChangeListener[] getLongListenerArray() {
+		LongChangeListener[] ls = longListeners;
+		return ls == null ? NO_LISTENERS : ls;
+	}
+
+	@Override
+	protected void commitBatch() {
+		boolean changed;
+		long oldValue;
+		synchronized (this) {
+			changed = longPending;
+			oldValue = batchOldLong;
+			longPending = false;
+		}
+		if (changed && oldValue != longValue) {
+			fireLongChange(oldValue, longValue);
+		}
+		super.commitBatch();
+	}
+
+	@Override
+	protected JSpinner createEditor() {
+		final SpinnerNumberModel model = new SpinnerNumberModel(
+				Long.valueOf(longValue), Long.valueOf(minimum),
+				Long.valueOf(maximum), Long.valueOf(1));
+		model.addChangeListener(new ChangeListener() {
+			@Override
+			public void stateChanged(ChangeEvent ce) {
+				setLong(model.getNumber().longValue());
+			}
+		});
+		return new JSpinner(model);
+	}
+
+	@Override
+	protected JLabel createViewer() {
+		return new JLabel();
+	}
+
+	@Override
+	protected void updateEditor(JSpinner editor) {
+		// Only box the value if the spinner is out of date.
+		SpinnerNumberModel model = (SpinnerNumberModel) editor.getModel();
+		if (model.getNumber().longValue() != longValue) {
+			editor.setValue(Long.valueOf(longValue));
+		}
+		editor.setEnabled(isEnabled());
+	}
+
+	@Override
+	protected void updateViewer(JLabel viewer) {
+		viewer.setText(Long.toString(longValue));
+	}
+
+}
@@ -1,32 +1,84 @@
 package tools.customizable;
 
+import java.awt.Color;
 import java.awt.Component;
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
-import javax.swing.event.DocumentEvent;
-import javax.swing.event.DocumentListener;
+import javax.swing.JViewport;
+import javax.swing.SwingUtilities;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultHighlighter;
+import javax.swing.text.Document;
+import javax.swing.text.Highlighter;
 
 /**
  * A property for holding text, which is designed for holding longer text than
  * does a {@link TextProperty}.
+ * <p>
+ * For text of many megabytes, such as log excerpts or generated reports, use
+ * {@link #setLargeText(File, long, int, Charset)}. The text then stays in the
+ * file, mapped into memory, and the components read only the lines they
+ * show. Large text is read-only and is not wrapped; setting a value returns
+ * the property to ordinary text.
+ * <p>
+ * Matches of the {@linkplain #setSearchText(String) search text} are
+ * highlighted in every editor and viewer. Only the visible part of each
+ * component is searched and highlighted, using a {@link TextSearchIndex}, so
+ * the cost of searching does not grow with the length of the text.
  * 
  * @author William Chargin
  * 
  */
 public class LongTextProperty extends
-		AbstractSwingProperty<String, JScrollPane, JScrollPane> {
+		AbstractTextProperty<JScrollPane, JScrollPane> {
 
 	/**
 	 * 
 	 */
 	private static final long serialVersionUID = 1L;
 
+	/**
+	 * The painter for search matches.
+	 */
+	private static final Highlighter.HighlightPainter SEARCH_PAINTER = new DefaultHighlighter.DefaultHighlightPainter(
+			Color.YELLOW);
+
+	/**
+	 * The client property of a text area holding the tags of its search
+	 * highlights.
+	 */
+	private static final String SEARCH_HIGHLIGHTS = "tools.customizable.searchHighlights"; //$NON-NLS-1$
+
+	/**
+	 * The text to highlight, or {@code null} for none.
+	 */
+	private transient String searchText;
+
+	/**
+	 * The index of the document, or {@code null} if it has not been created.
+	 */
+	private transient TextSearchIndex searchIndex;
+
+	/**
+	 * The listener that highlights the newly visible part of a component when
+	 * it is scrolled.
+	 */
+	private transient ChangeListener scrollListener;
+
 	/**
 	 * Creates the property with a blank name and empty string value.
 	 */
 	public LongTextProperty() {
-		this(new String(), new String());
+		super();
 	}
 
 	/**
@@ -41,57 +93,227 @@ public class LongTextProperty extends
 		super(name, value);
 	}
 
-	@Override
-	protected JScrollPane createEditor() {
-		final JTextArea txtr = new JTextArea();
-		txtr.getDocument().addDocumentListener(new DocumentListener() {
-			@Override
-			public void removeUpdate(DocumentEvent e) {
-				setValue(txtr.getText());
-			}
+	/**
+	 * Makes the value of this property the text of a region of the given
+	 * file, which is mapped into memory rather than read. The file should not
+	 * be modified while it is in use. The value is only built as a
+	 * {@code String} if it is {@linkplain #getValue() requested}, and is built
+	 * afresh on each request rather than kept on the heap.
+	 * <p>
+	 * For the same reason, value listeners (such as a {@link DirtyTracker},
+	 * {@link PropertyJournal}, or {@link MappedPropertyStore}) are not
+	 * notified when large text is shown; when a value later replaces it, the
+	 * old value they are given is {@code null}. Change listeners are notified
+	 * as usual.
+	 * <p>
+	 * This method may be called from any thread. The lines of the text are
+	 * found on the calling thread; the text is then shown on the event
+	 * dispatch thread.
+	 * 
+	 * @param file
+	 *            the file
+	 * @param offset
+	 *            the offset of the region, in bytes
+	 * @param length
+	 *            the length of the region, in bytes
+	 * @param charset
+	 *            the charset of the text, which must encode every character
+	 *            as a single byte (e.g., ISO-8859-1)
+	 * @throws IOException
+	 *             if the file cannot be mapped
+	 * @throws IllegalArgumentException
+	 *             if the charset is not a single-byte charset, or the region
+	 *             does not lie within the file
+	 */
+	public void setLargeText(File file, long offset, int length,
+			Charset charset) throws IOException, IllegalArgumentException {
+		final Document document = new MappedDocument(file, offset, length,
+				charset);
+		if (SwingUtilities.isEventDispatchThread()) {
+			setDocument(document);
+		} else {
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					setDocument(document);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Determines whether this property holds large text mapped from a file.
+	 * 
+	 * @return {@code true} if the text is mapped from a file
+	 * @see #setLargeText(File, long, int, Charset)
+	 */
+	public boolean isLargeText() {
+		return isMapped();
+	}
+
+	/**
+	 * Gets the text whose matches are highlighted.
+	 * 
+	 * @return the search text, or {@code null} if there is none
+	 */
+	public String getSearchText() {
+		return searchText;
+	}
+
+	/**
+	 * Sets the text whose matches, ignoring case, are highlighted in the
+	 * editors and viewers. This must be called on the event dispatch thread.
+	 * 
+	 * @param searchText
+	 *            the search text, or {@code null} or empty to remove the
+	 *            highlights
+	 */
+	public void setSearchText(String searchText) {
+		this.searchText = searchText == null || searchText.length() == 0 ? null
+				: searchText;
+		updateEditors();
+		updateViewers();
+	}
 
-			@Override
-			public void insertUpdate(DocumentEvent e) {
-				setValue(txtr.getText());
+	/**
+	 * Finds the next match of the search text, for example to scroll to it.
+	 * This must be called on the event dispatch thread.
+	 * 
+	 * @param from
+	 *            the offset at which to start searching
+	 * @return the offset of the next match, or {@code -1} if there is none (or
+	 *         there is no search text)
+	 */
+	public int findNext(int from) {
+		if (searchText == null) {
+			return -1;
+		}
+		return getSearchIndex().find(searchText, from, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Gets the index of the current document, creating it if necessary.
+	 * 
+	 * @return the index
+	 */
+	private TextSearchIndex getSearchIndex() {
+		Document document = getDocument();
+		if (searchIndex == null || searchIndex.getDocument() != document) {
+			if (searchIndex != null) {
+				searchIndex.dispose();
 			}
+			searchIndex = new TextSearchIndex(document);
+		}
+		return searchIndex;
+	}
+
+	/**
+	 * Gets the listener that highlights matches when a component is scrolled.
+	 * 
+	 * @return the listener
+	 */
+	private ChangeListener getScrollListener() {
+		if (scrollListener == null) {
+			scrollListener = new ChangeListener() {
+				@Override
+				public void stateChanged(ChangeEvent ce) {
+					Component c = ((JViewport) ce.getSource()).getView();
+					if (c instanceof JTextArea) {
+						highlight((JTextArea) c);
+					}
+				}
+			};
+		}
+		return scrollListener;
+	}
 
-			@Override
-			public void changedUpdate(DocumentEvent e) {
-				setValue(txtr.getText());
+	/**
+	 * Replaces the search highlights of the given text area with those for the
+	 * matches in its visible lines.
+	 * 
+	 * @param txtr
+	 *            the text area
+	 */
+	// viewToModel2 is not available before Java 9.
+	@SuppressWarnings("deprecation")
+	private void highlight(JTextArea txtr) {
+		@SuppressWarnings("unchecked")
+		List<Object> tags = (List<Object>) txtr
+				.getClientProperty(SEARCH_HIGHLIGHTS);
+		if (tags == null && searchText == null) {
+			return;
+		}
+		Highlighter highlighter = txtr.getHighlighter();
+		if (tags == null) {
+			tags = new ArrayList<Object>();
+			txtr.putClientProperty(SEARCH_HIGHLIGHTS, tags);
+		}
+		for (Object tag : tags) {
+			highlighter.removeHighlight(tag);
+		}
+		tags.clear();
+		if (searchText == null
+				|| !(txtr.getParent() instanceof JViewport)) {
+			return;
+		}
+		Rectangle view = ((JViewport) txtr.getParent()).getViewRect();
+		try {
+			int start = txtr.getLineStartOffset(txtr.getLineOfOffset(txtr
+					.viewToModel(view.getLocation())));
+			view.translate(view.width, view.height);
+			int end = txtr.getLineEndOffset(txtr.getLineOfOffset(txtr
+					.viewToModel(view.getLocation())));
+			TextSearchIndex index = getSearchIndex();
+			int length = searchText.length();
+			for (int at = index.find(searchText, start, end); at >= 0; at = index
+					.find(searchText, at + 1, end)) {
+				tags.add(highlighter.addHighlight(at, at + length,
+						SEARCH_PAINTER));
 			}
-		});
+		} catch (BadLocationException ble) {
+			// The view and the document disagree; try again on the next
+			// update.
+		}
+	}
+
+	@Override
+	protected JScrollPane createEditor() {
+		JTextArea txtr = new JTextArea(getDocument());
 		txtr.setRows(5);
-		txtr.setLineWrap(true);
+		txtr.setLineWrap(!isLargeText());
 		txtr.setWrapStyleWord(true);
+		txtr.setEditable(!isLargeText());
 		txtr.setCaretPosition(0);
-		return new JScrollPane(txtr);
+		addCommitTriggers(txtr);
+		JScrollPane pane = new JScrollPane(txtr);
+		pane.getViewport().addChangeListener(getScrollListener());
+		return pane;
 
 	}
 
 	@Override
 	protected JScrollPane createViewer() {
-		JTextArea txtr = new JTextArea();
+		JTextArea txtr = new JTextArea(getDocument());
 		txtr.setRows(5);
-		txtr.setLineWrap(true);
+		txtr.setLineWrap(!isLargeText());
 		txtr.setWrapStyleWord(true);
 		txtr.setEditable(false);
 		txtr.setCaretPosition(0);
-		return new JScrollPane(txtr);
-	}
-
-	@Override
-	public void setValue(String value) {
-		super.setValue(value == null ? new String() : value);
+		JScrollPane pane = new JScrollPane(txtr);
+		pane.getViewport().addChangeListener(getScrollListener());
+		return pane;
 	}
 
 	@Override
 	protected void updateEditor(JScrollPane editor) {
 		Component c = editor.getViewport().getView();
-		if (c instanceof JTextArea
-				&& !((JTextArea) c).getText().equals(getValue())) {
-			((JTextArea) c).setText(getValue() == null ? new String()
-					: getValue());
-			c.setEnabled(isEnabled());
+		if (c instanceof JTextArea) {
+			JTextArea txtr = (JTextArea) c;
+			if (install(txtr)) {
+				txtr.setEditable(!isLargeText());
+			}
+			txtr.setEnabled(isEnabled());
+			highlight(txtr);
 		}
 	}
 
@@ -99,11 +321,30 @@ public class LongTextProperty extends
 	protected void updateViewer(JScrollPane viewer) {
 		Component c = viewer.getViewport().getView();
 		if (c instanceof JTextArea) {
-			JTextArea txtr = (JTextArea) c;
-			int caretPos = txtr.getCaretPosition();
-			txtr.setText(getValue() == null ? new String() : getValue());
-			txtr.setCaretPosition(caretPos);
+			install((JTextArea) c);
+			highlight((JTextArea) c);
+		}
+	}
+
+	/**
+	 * Installs the shared document in the given text area, if it is not
+	 * already installed. Otherwise, the text is shared through the document,
+	 * so nothing needs to be done.
+	 * 
+	 * @param txtr
+	 *            the text area
+	 * @return {@code true} if the document was installed
+	 */
+	private boolean install(JTextArea txtr) {
+		Document document = getDocument();
+		if (txtr.getDocument() == document) {
+			return false;
 		}
+		txtr.setDocument(document);
+		// Wrapping lays out every line, which defeats mapping.
+		txtr.setLineWrap(!isLargeText());
+		txtr.setCaretPosition(0);
+		return true;
 	}
 
 }
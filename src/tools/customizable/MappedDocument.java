@@ -0,0 +1,262 @@
+package tools.customizable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.PlainDocument;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.undo.UndoableEdit;
+
+/**
+ * A read-only document whose text is a region of a memory-mapped file. The
+ * text is never copied onto the heap as a whole: characters are decoded only
+ * for the ranges that are read (for example, the lines that are painted), and
+ * the operating system pages the file in as those ranges are touched.
+ * <p>
+ * Only single-byte charsets are supported, so that character offsets are byte
+ * offsets. The line structure is built once, when the document is created.
+ * 
+ * @author William Chargin
+ * 
+ */
+final class MappedDocument extends PlainDocument {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Text content backed by a byte buffer.
+	 * 
+	 * @author William Chargin
+	 * 
+	 */
+	private static final class MappedContent implements
+			AbstractDocument.Content {
+
+		/**
+		 * The bytes of the text.
+		 */
+		private final ByteBuffer buffer;
+
+		/**
+		 * The character for each byte value.
+		 */
+		private final char[] table;
+
+		/**
+		 * The number of characters, not counting the implied final newline.
+		 */
+		private final int length;
+
+		/**
+		 * Creates the content.
+		 * 
+		 * @param buffer
+		 *            the bytes of the text
+		 * @param charset
+		 *            the single-byte charset of the text
+		 */
+		private MappedContent(ByteBuffer buffer, Charset charset) {
+			this.buffer = buffer;
+			this.table = decodeTable(charset);
+			this.length = buffer.capacity();
+		}
+
+		@Override
+		public Position createPosition(final int offset)
+				throws BadLocationException {
+			if (offset < 0 || offset > length + 1) {
+				throw new BadLocationException("invalid offset", offset); //$NON-NLS-1$
+			}
+			// The text never changes, so positions never move.
+			return new Position() {
+				@Override
+				public int getOffset() {
+					return offset;
+				}
+			};
+		}
+
+		@Override
+		public int length() {
+			return length + 1;
+		}
+
+		@Override
+		public UndoableEdit insertString(int where, String str)
+				throws BadLocationException {
+			throw new BadLocationException("read-only", where); //$NON-NLS-1$
+		}
+
+		@Override
+		public UndoableEdit remove(int where, int nitems)
+				throws BadLocationException {
+			throw new BadLocationException("read-only", where); //$NON-NLS-1$
+		}
+
+		@Override
+		public String getString(int where, int len)
+				throws BadLocationException {
+			Segment segment = new Segment();
+			getChars(where, len, segment);
+			return new String(segment.array, segment.offset, segment.count);
+		}
+
+		@Override
+		public void getChars(int where, int len, Segment txt)
+				throws BadLocationException {
+			if (where < 0 || len < 0 || where + len > length + 1) {
+				throw new BadLocationException("invalid range", where); //$NON-NLS-1$
+			}
+			char[] chars = new char[len];
+			int n = Math.min(len, length - where);
+			for (int i = 0; i < n; i++) {
+				chars[i] = table[buffer.get(where + i) & 0xFF];
+			}
+			if (n < len) {
+				chars[n] = '\n';
+			}
+			txt.array = chars;
+			txt.offset = 0;
+			txt.count = len;
+		}
+
+		/**
+		 * Gets the character at the given offset.
+		 * 
+		 * @param offset
+		 *            the offset, which must be less than the length
+		 * @return the character
+		 */
+		private char charAt(int offset) {
+			return table[buffer.get(offset) & 0xFF];
+		}
+	}
+
+	/**
+	 * Maps a region of the given file and creates a document over it.
+	 * 
+	 * @param file
+	 *            the file
+	 * @param offset
+	 *            the offset of the region, in bytes
+	 * @param length
+	 *            the length of the region, in bytes
+	 * @param charset
+	 *            the charset of the text, which must encode every character
+	 *            as a single byte
+	 * @throws IOException
+	 *             if the file cannot be mapped
+	 * @throws IllegalArgumentException
+	 *             if the charset is not a single-byte charset, or the region
+	 *             is invalid
+	 */
+	MappedDocument(File file, long offset, int length, Charset charset)
+			throws IOException, IllegalArgumentException {
+		super(new MappedContent(map(file, offset, length), charset));
+	}
+
+	/**
+	 * Maps a region of the given file, read-only.
+	 * 
+	 * @param file
+	 *            the file
+	 * @param offset
+	 *            the offset of the region, in bytes
+	 * @param length
+	 *            the length of the region, in bytes
+	 * @return the mapped region
+	 * @throws IOException
+	 *             if the file cannot be mapped
+	 */
+	private static ByteBuffer map(File file, long offset, int length)
+			throws IOException {
+		if (offset < 0 || length < 0 || length == Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("invalid region"); //$NON-NLS-1$
+		}
+		RandomAccessFile raf = new RandomAccessFile(file, "r"); //$NON-NLS-1$
+		try {
+			if (offset + length > raf.length()) {
+				throw new IllegalArgumentException("region exceeds file"); //$NON-NLS-1$
+			}
+			// The mapping stays valid after the channel is closed.
+			return raf.getChannel().map(FileChannel.MapMode.READ_ONLY,
+					offset, length);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Builds the character for each byte value in the given charset.
+	 * 
+	 * @param charset
+	 *            the charset
+	 * @return the table
+	 * @throws IllegalArgumentException
+	 *             if the charset is not a single-byte charset
+	 */
+	private static char[] decodeTable(Charset charset)
+			throws IllegalArgumentException {
+		if (!charset.canEncode()
+				|| charset.newEncoder().maxBytesPerChar() != 1) {
+			throw new IllegalArgumentException("not a single-byte charset: " //$NON-NLS-1$
+					+ charset);
+		}
+		byte[] bytes = new byte[256];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) i;
+		}
+		char[] table = new String(bytes, charset).toCharArray();
+		if (table.length != bytes.length) {
+			throw new IllegalArgumentException("not a single-byte charset: " //$NON-NLS-1$
+					+ charset);
+		}
+		return table;
+	}
+
+	/**
+	 * Creates one line element for each line of the content. This is invoked
+	 * once, by the constructor.
+	 */
+	@Override
+	protected AbstractElement createDefaultRoot() {
+		MappedContent content = (MappedContent) getContent();
+		BranchElement map = (BranchElement) createBranchElement(null, null);
+		List<Element> lines = new ArrayList<Element>();
+		int start = 0;
+		for (int i = 0; i < content.length; i++) {
+			if (content.charAt(i) == '\n') {
+				lines.add(createLeafElement(map, null, start, i + 1));
+				start = i + 1;
+			}
+		}
+		lines.add(createLeafElement(map, null, start, content.length + 1));
+		map.replace(0, 0, lines.toArray(new Element[lines.size()]));
+		return map;
+	}
+
+	@Override
+	public void insertString(int offs, String str, AttributeSet a)
+			throws BadLocationException {
+		throw new BadLocationException("read-only", offs); //$NON-NLS-1$
+	}
+
+	@Override
+	public void remove(int offs, int len) throws BadLocationException {
+		throw new BadLocationException("read-only", offs); //$NON-NLS-1$
+	}
+}
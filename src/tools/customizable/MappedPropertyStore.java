@@ -0,0 +1,668 @@
+package tools.customizable;
+
+import java.awt.Color;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Stores fixed-width property values in slots of a memory-mapped file. Once a
+ * property is {@linkplain #bind(AbstractProperty) bound} to a slot, every
+ * change to its value is written straight into the mapped file, with no
+ * serialization pass; binding a property whose slot already exists loads the
+ * stored value, with no parsing.
+ * <p>
+ * Properties whose values are {@code Boolean}s, {@code Integer}s,
+ * {@code Long}s, {@code Double}s, {@link Time}s, or {@link Color}s are
+ * supported. {@link IntProperty}, {@link LongProperty}, and
+ * {@link DoubleProperty} are written through without boxing.
+ * <p>
+ * Several processes may share one file. New slots are allocated under a file
+ * lock, and {@link #reload()} picks up values written by other processes.
+ * Writes to the mapped file reach the operating system immediately, but are
+ * only guaranteed to reach the disk after {@link #force()}.
+ * <p>
+ * The file consists of a header (a magic number, a version, and the number of
+ * slots in use) and a sequence of {@value #SLOT_SIZE}-byte slots, each holding
+ * a property name of at most {@value #NAME_CAPACITY} bytes in UTF-8, a type
+ * tag, a flag for {@code null}, and the value in eight bytes. A {@link Time}
+ * keeps its hours and minutes in those eight bytes and its seconds in four
+ * more, so that each field is stored as it is.
+ * 
+ * @author William Chargin
+ * 
+ */
+public class MappedPropertyStore implements Closeable {
+
+	/**
+	 * The magic number ({@code "C2MS"}) at the start of a store.
+	 */
+	private static final int MAGIC = 0x43324D53;
+
+	/**
+	 * The current version of the format.
+	 */
+	private static final int VERSION = 1;
+
+	/**
+	 * The size of the header, in bytes.
+	 */
+	private static final int HEADER_SIZE = 16;
+
+	/**
+	 * The offset within the header of the number of slots in use.
+	 */
+	private static final int SLOT_COUNT_OFFSET = 8;
+
+	/**
+	 * The size of a slot, in bytes.
+	 */
+	public static final int SLOT_SIZE = 64;
+
+	/**
+	 * The maximum length of a property name, in UTF-8 bytes.
+	 */
+	public static final int NAME_CAPACITY = 48;
+
+	/**
+	 * The offset within a slot of the type tag.
+	 */
+	private static final int TAG_OFFSET = 2 + NAME_CAPACITY;
+
+	/**
+	 * The offset within a slot of the flag that is {@code 1} if the value is
+	 * present and {@code 0} if it is {@code null}.
+	 */
+	private static final int PRESENT_OFFSET = TAG_OFFSET + 1;
+
+	/**
+	 * The offset within a slot of the seconds of a {@link Time}.
+	 */
+	private static final int SECONDS_OFFSET = 52;
+
+	/**
+	 * The offset within a slot of the value.
+	 */
+	private static final int VALUE_OFFSET = 56;
+
+	/**
+	 * The number of slots a new file has room for.
+	 */
+	private static final int INITIAL_CAPACITY = 64;
+
+	/**
+	 * The UTF-8 charset.
+	 */
+	private static final Charset UTF_8 = Charset.forName("UTF-8"); //$NON-NLS-1$
+
+	/**
+	 * The binding of one property to one slot. It is registered as a listener
+	 * on the property and writes each new value into the slot.
+	 * 
+	 * @author William Chargin
+	 * 
+	 */
+	private final class Binding implements ValueChangeListener<Object>,
+			IntChangeListener, LongChangeListener, DoubleChangeListener {
+
+		/**
+		 * The bound property.
+		 */
+		private final AbstractProperty<?> property;
+
+		/**
+		 * The offset of the slot in the file.
+		 */
+		private final int offset;
+
+		/**
+		 * The type tag of the slot.
+		 */
+		private final int tag;
+
+		/**
+		 * Creates the binding.
+		 * 
+		 * @param property
+		 *            the property
+		 * @param offset
+		 *            the offset of the slot
+		 * @param tag
+		 *            the type tag
+		 */
+		private Binding(AbstractProperty<?> property, int offset, int tag) {
+			this.property = property;
+			this.offset = offset;
+			this.tag = tag;
+		}
+
+		@Override
+		public void valueChanged(AbstractProperty<? extends Object> property,
+				Object oldValue, Object newValue) {
+			store(offset, tag, property.getValue());
+		}
+
+		@Override
+		public void intChanged(IntProperty property, int oldValue,
+				int newValue) {
+			storeBits(offset, newValue);
+		}
+
+		@Override
+		public void longChanged(LongProperty property, long oldValue,
+				long newValue) {
+			storeBits(offset, newValue);
+		}
+
+		@Override
+		public void doubleChanged(DoubleProperty property, double oldValue,
+				double newValue) {
+			storeBits(offset, Double.doubleToRawLongBits(newValue));
+		}
+	}
+
+	/**
+	 * The open file.
+	 */
+	private final RandomAccessFile file;
+
+	/**
+	 * The channel of the file.
+	 */
+	private final FileChannel channel;
+
+	/**
+	 * The mapping of the whole file.
+	 */
+	private MappedByteBuffer buffer;
+
+	/**
+	 * The offset of each slot that has been seen, by name.
+	 */
+	private final Map<String, Integer> slots = new HashMap<String, Integer>();
+
+	/**
+	 * The number of slots that have been scanned into {@link #slots}.
+	 */
+	private int scannedSlots;
+
+	/**
+	 * The bound properties.
+	 */
+	private final List<Binding> bindings = new ArrayList<Binding>();
+
+	/**
+	 * The bound properties, compared by identity.
+	 */
+	private final Set<AbstractProperty<?>> bound = Collections
+			.newSetFromMap(new IdentityHashMap<AbstractProperty<?>, Boolean>());
+
+	/**
+	 * Opens the store in the given file, creating it if it does not exist.
+	 * 
+	 * @param file
+	 *            the file
+	 * @throws IOException
+	 *             if an I/O error occurs or the file is not a store
+	 */
+	public MappedPropertyStore(File file) throws IOException {
+		super();
+		this.file = new RandomAccessFile(file, "rw"); //$NON-NLS-1$
+		this.channel = this.file.getChannel();
+		try {
+			FileLock lock = channel.lock();
+			try {
+				if (channel.size() == 0) {
+					buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+							HEADER_SIZE + INITIAL_CAPACITY * SLOT_SIZE);
+					buffer.putInt(0, MAGIC);
+					buffer.putShort(4, (short) VERSION);
+					buffer.putInt(SLOT_COUNT_OFFSET, 0);
+				} else {
+					buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+							channel.size());
+					if (buffer.capacity() < HEADER_SIZE
+							|| buffer.getInt(0) != MAGIC) {
+						throw new IOException("not a property store"); //$NON-NLS-1$
+					}
+					int version = buffer.getShort(4) & 0xFFFF;
+					if (version > VERSION) {
+						throw new IOException("unsupported version: " + version); //$NON-NLS-1$
+					}
+				}
+				scanSlots();
+			} finally {
+				lock.release();
+			}
+		} catch (IOException ioe) {
+			this.file.close();
+			throw ioe;
+		}
+	}
+
+	/**
+	 * Binds the given property to the slot with its name. If the slot exists,
+	 * the property is set to the value in it; otherwise, a slot is allocated
+	 * and the current value is stored in it. From then on, every change to
+	 * the property is written to the slot. Binding a property that is already
+	 * bound has no effect.
+	 * 
+	 * @param property
+	 *            the property to bind
+	 * @throws IllegalArgumentException
+	 *             if the property has no name, its name is longer than
+	 *             {@value #NAME_CAPACITY} bytes in UTF-8, its value is not of
+	 *             a supported type, or the slot with its name holds a value
+	 *             of another type
+	 * @throws IOException
+	 *             if the file cannot be extended
+	 */
+	public synchronized void bind(AbstractProperty<?> property)
+			throws IllegalArgumentException, IOException {
+		if (bound.contains(property)) {
+			return;
+		}
+		String name = property.getName();
+		if (name == null) {
+			throw new IllegalArgumentException("property has no name"); //$NON-NLS-1$
+		}
+		byte[] nameBytes = name.getBytes(UTF_8);
+		if (nameBytes.length > NAME_CAPACITY) {
+			throw new IllegalArgumentException("name too long: " + name); //$NON-NLS-1$
+		}
+		int tag = tagFor(property);
+		if (tag < 0) {
+			throw new IllegalArgumentException("unsupported value type: " //$NON-NLS-1$
+					+ name);
+		}
+		Integer offset = slots.get(name);
+		if (offset == null) {
+			offset = Integer.valueOf(allocate(name, nameBytes, tag, property));
+		} else {
+			checkTag(name, offset.intValue(), tag);
+			load(property, offset.intValue(), tag);
+		}
+		Binding binding = new Binding(property, offset.intValue(), tag);
+		bindings.add(binding);
+		bound.add(property);
+		if (property instanceof IntProperty) {
+			((IntProperty) property).addIntChangeListener(binding);
+		} else if (property instanceof LongProperty) {
+			((LongProperty) property).addLongChangeListener(binding);
+		} else if (property instanceof DoubleProperty) {
+			((DoubleProperty) property).addDoubleChangeListener(binding);
+		} else {
+			property.addValueChangeListener(binding);
+		}
+	}
+
+	/**
+	 * Binds each of the given properties. If {@code properties} is a
+	 * {@link PropertySet}, the stored values are loaded in a
+	 * {@linkplain PropertySet#beginBatch() batch}. {@code null} elements are
+	 * skipped.
+	 * 
+	 * @param properties
+	 *            the properties to bind
+	 * @throws IllegalArgumentException
+	 *             if a property cannot be bound
+	 * @throws IOException
+	 *             if the file cannot be extended
+	 * @see #bind(AbstractProperty)
+	 */
+	public void bindAll(Collection<? extends AbstractProperty<?>> properties)
+			throws IllegalArgumentException, IOException {
+		PropertySet batch = properties instanceof PropertySet ? (PropertySet) properties
+				: null;
+		if (batch != null) {
+			batch.beginBatch();
+		}
+		try {
+			for (AbstractProperty<?> property : properties) {
+				if (property != null) {
+					bind(property);
+				}
+			}
+		} finally {
+			if (batch != null) {
+				batch.endBatch();
+			}
+		}
+	}
+
+	/**
+	 * Sets every bound property to the value in its slot, to pick up changes
+	 * written by other processes.
+	 */
+	public synchronized void reload() {
+		for (Binding binding : bindings) {
+			load(binding.property, binding.offset, binding.tag);
+		}
+	}
+
+	/**
+	 * Forces all values written so far to the disk.
+	 */
+	public synchronized void force() {
+		buffer.force();
+	}
+
+	/**
+	 * Unbinds all properties, forces the values to the disk, and closes the
+	 * file. (The mapping itself is released when it is garbage-collected.)
+	 * 
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		for (Binding binding : bindings) {
+			AbstractProperty<?> property = binding.property;
+			if (property instanceof IntProperty) {
+				((IntProperty) property).removeIntChangeListener(binding);
+			} else if (property instanceof LongProperty) {
+				((LongProperty) property).removeLongChangeListener(binding);
+			} else if (property instanceof DoubleProperty) {
+				((DoubleProperty) property).removeDoubleChangeListener(binding);
+			} else {
+				property.removeValueChangeListener(binding);
+			}
+		}
+		bindings.clear();
+		bound.clear();
+		buffer.force();
+		file.close();
+	}
+
+	/**
+	 * Determines the type tag for the given property.
+	 * 
+	 * @param property
+	 *            the property
+	 * @return the tag, or {@code -1} if the property is not supported
+	 */
+	private static int tagFor(AbstractProperty<?> property) {
+		if (property instanceof IntProperty) {
+			return PropertySetCodec.TAG_INT;
+		}
+		if (property instanceof LongProperty) {
+			return PropertySetCodec.TAG_LONG;
+		}
+		if (property instanceof DoubleProperty) {
+			return PropertySetCodec.TAG_DOUBLE;
+		}
+		if (property instanceof TimeProperty) {
+			return PropertySetCodec.TAG_TIME;
+		}
+		if (property instanceof ColorProperty) {
+			return PropertySetCodec.TAG_COLOR;
+		}
+		Object value = property.getValue();
+		if (value instanceof Boolean) {
+			return PropertySetCodec.TAG_BOOLEAN;
+		}
+		if (value instanceof Integer) {
+			return PropertySetCodec.TAG_INT;
+		}
+		if (value instanceof Long) {
+			return PropertySetCodec.TAG_LONG;
+		}
+		if (value instanceof Double) {
+			return PropertySetCodec.TAG_DOUBLE;
+		}
+		if (value instanceof Time) {
+			return PropertySetCodec.TAG_TIME;
+		}
+		if (value instanceof Color) {
+			return PropertySetCodec.TAG_COLOR;
+		}
+		return -1;
+	}
+
+	/**
+	 * Checks that a slot holds values of the given type.
+	 * 
+	 * @param name
+	 *            the name of the slot
+	 * @param offset
+	 *            the offset of the slot
+	 * @param tag
+	 *            the type tag of the property being bound
+	 * @throws IllegalArgumentException
+	 *             if the slot has another type tag
+	 */
+	private void checkTag(String name, int offset, int tag)
+			throws IllegalArgumentException {
+		int stored = buffer.get(offset + TAG_OFFSET) & 0xFF;
+		if (stored != tag) {
+			throw new IllegalArgumentException("slot " + name //$NON-NLS-1$
+					+ " holds another type (tag " + stored + ")"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+
+	/**
+	 * Reads any slots allocated since the last scan (possibly by another
+	 * process), remapping the file if it has grown. The caller must hold the
+	 * file lock.
+	 * 
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private void scanSlots() throws IOException {
+		int count = buffer.getInt(SLOT_COUNT_OFFSET);
+		if (HEADER_SIZE + (long) count * SLOT_SIZE > buffer.capacity()) {
+			remap(channel.size());
+		}
+		for (int i = scannedSlots; i < count; i++) {
+			int offset = HEADER_SIZE + i * SLOT_SIZE;
+			int length = buffer.getShort(offset) & 0xFFFF;
+			byte[] nameBytes = new byte[Math.min(length, NAME_CAPACITY)];
+			for (int j = 0; j < nameBytes.length; j++) {
+				nameBytes[j] = buffer.get(offset + 2 + j);
+			}
+			String name = new String(nameBytes, UTF_8);
+			if (!slots.containsKey(name)) {
+				slots.put(name, Integer.valueOf(offset));
+			}
+		}
+		scannedSlots = count;
+	}
+
+	/**
+	 * Maps the given length of the file, which is extended if necessary.
+	 * 
+	 * @param size
+	 *            the length to map
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private void remap(long size) throws IOException {
+		buffer.force();
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+	}
+
+	/**
+	 * Allocates a slot for the given property and stores its current value.
+	 * 
+	 * @param name
+	 *            the name of the property
+	 * @param nameBytes
+	 *            the name in UTF-8
+	 * @param tag
+	 *            the type tag
+	 * @param property
+	 *            the property
+	 * @return the offset of the slot
+	 * @throws IllegalArgumentException
+	 *             if another process allocated the slot for a value of
+	 *             another type
+	 * @throws IOException
+	 *             if the file cannot be extended
+	 */
+	private int allocate(String name, byte[] nameBytes, int tag,
+			AbstractProperty<?> property) throws IOException {
+		FileLock lock = channel.lock();
+		try {
+			scanSlots();
+			Integer existing = slots.get(name);
+			if (existing != null) {
+				// Another process allocated it in the meantime.
+				int offset = existing.intValue();
+				checkTag(name, offset, tag);
+				load(property, offset, tag);
+				return offset;
+			}
+			int count = scannedSlots;
+			int offset = HEADER_SIZE + count * SLOT_SIZE;
+			if (offset + SLOT_SIZE > buffer.capacity()) {
+				remap(HEADER_SIZE + (long) Math.max(count * 2, INITIAL_CAPACITY)
+						* SLOT_SIZE);
+			}
+			buffer.putShort(offset, (short) nameBytes.length);
+			for (int j = 0; j < nameBytes.length; j++) {
+				buffer.put(offset + 2 + j, nameBytes[j]);
+			}
+			buffer.put(offset + TAG_OFFSET, (byte) tag);
+			store(offset, tag, property.getValue());
+			buffer.putInt(SLOT_COUNT_OFFSET, count + 1);
+			scannedSlots = count + 1;
+			slots.put(name, Integer.valueOf(offset));
+			return offset;
+		} finally {
+			lock.release();
+		}
+	}
+
+	/**
+	 * Writes the given value into a slot.
+	 * 
+	 * @param offset
+	 *            the offset of the slot
+	 * @param tag
+	 *            the type tag of the slot
+	 * @param value
+	 *            the value, which must be of the type of the tag
+	 */
+	private synchronized void store(int offset, int tag, Object value) {
+		if (value == null) {
+			buffer.put(offset + PRESENT_OFFSET, (byte) 0);
+			return;
+		}
+		long bits;
+		switch (tag) {
+		case PropertySetCodec.TAG_BOOLEAN:
+			bits = ((Boolean) value).booleanValue() ? 1 : 0;
+			break;
+		case PropertySetCodec.TAG_INT:
+			bits = ((Integer) value).intValue();
+			break;
+		case PropertySetCodec.TAG_LONG:
+			bits = ((Long) value).longValue();
+			break;
+		case PropertySetCodec.TAG_DOUBLE:
+			bits = Double.doubleToRawLongBits(((Double) value).doubleValue());
+			break;
+		case PropertySetCodec.TAG_TIME:
+			bits = (long) ((Time) value).hours << 32
+					| ((Time) value).minutes & 0xFFFFFFFFL;
+			break;
+		case PropertySetCodec.TAG_COLOR:
+			bits = ((Color) value).getRGB();
+			break;
+		default:
+			throw new IllegalStateException("bad tag: " + tag); //$NON-NLS-1$
+		}
+		if (tag == PropertySetCodec.TAG_TIME) {
+			buffer.putInt(offset + SECONDS_OFFSET, ((Time) value).seconds);
+		}
+		buffer.putLong(offset + VALUE_OFFSET, bits);
+		buffer.put(offset + PRESENT_OFFSET, (byte) 1);
+	}
+
+	/**
+	 * Writes the given bits into a slot holding a non-{@code null} value.
+	 * 
+	 * @param offset
+	 *            the offset of the slot
+	 * @param bits
+	 *            the encoded value
+	 */
+	private synchronized void storeBits(int offset, long bits) {
+		buffer.putLong(offset + VALUE_OFFSET, bits);
+		buffer.put(offset + PRESENT_OFFSET, (byte) 1);
+	}
+
+	/**
+	 * Sets the given property to the value in a slot.
+	 * 
+	 * @param property
+	 *            the property
+	 * @param offset
+	 *            the offset of the slot
+	 * @param tag
+	 *            the type tag of the slot
+	 */
+	@SuppressWarnings("unchecked")
+	private void load(AbstractProperty<?> property, int offset, int tag) {
+		boolean present = buffer.get(offset + PRESENT_OFFSET) != 0;
+		long bits = buffer.getLong(offset + VALUE_OFFSET);
+		if (property instanceof IntProperty) {
+			((IntProperty) property).setInt((int) bits);
+			return;
+		}
+		if (property instanceof LongProperty) {
+			((LongProperty) property).setLong(bits);
+			return;
+		}
+		if (property instanceof DoubleProperty) {
+			double d = Double.longBitsToDouble(bits);
+			if (!Double.isNaN(d)) {
+				// NaN can only have been written by another kind of property.
+				((DoubleProperty) property).setDouble(d);
+			}
+			return;
+		}
+		Object value;
+		if (!present) {
+			value = null;
+		} else {
+			switch (tag) {
+			case PropertySetCodec.TAG_BOOLEAN:
+				value = Boolean.valueOf(bits != 0);
+				break;
+			case PropertySetCodec.TAG_INT:
+				value = Integer.valueOf((int) bits);
+				break;
+			case PropertySetCodec.TAG_LONG:
+				value = Long.valueOf(bits);
+				break;
+			case PropertySetCodec.TAG_DOUBLE:
+				value = Double.valueOf(Double.longBitsToDouble(bits));
+				break;
+			case PropertySetCodec.TAG_TIME:
+				value = new Time((int) (bits >> 32), (int) bits,
+						buffer.getInt(offset + SECONDS_OFFSET));
+				break;
+			case PropertySetCodec.TAG_COLOR:
+				value = new Color((int) bits, true);
+				break;
+			default:
+				return;
+			}
+		}
+		((AbstractProperty<Object>) property).setValue(value);
+	}
+}
@@ -8,6 +8,8 @@ import java.awt.event.ActionListener;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Vector;
 
 import javax.swing.DefaultComboBoxModel;
@@ -215,4 +217,13 @@ public class MultipleChoiceProperty<T> extends
 		}
 		updateEditors();
 	}
+
+	/**
+	 * Gets the list of possible values.
+	 * 
+	 * @return an unmodifiable view of the possible values
+	 */
+	public List<T> getValues() {
+		return Collections.unmodifiableList(values);
+	}
 }
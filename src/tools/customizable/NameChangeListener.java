@@ -0,0 +1,27 @@
+package tools.customizable;
+
+import java.util.EventListener;
+
+/**
+ * A listener notified when the name of a property changes. Name changes are
+ * delivered immediately, even while the property is in a batch.
+ * 
+ * @author William Chargin
+ * 
+ */
+public interface NameChangeListener extends EventListener {
+
+	/**
+	 * Invoked after the name of a property changes.
+	 * 
+	 * @param property
+	 *            the property whose name changed
+	 * @param oldName
+	 *            the previous name
+	 * @param newName
+	 *            the new (current) name
+	 */
+	public void nameChanged(AbstractProperty<?> property, String oldName,
+			String newName);
+
+}
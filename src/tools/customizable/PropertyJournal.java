@@ -0,0 +1,597 @@
+package tools.customizable;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persists the values of a set of properties as a snapshot file plus an
+ * append-only journal of changes. Each change to a property appends one small
+ * record to the journal, so saving costs the same however many properties
+ * there are; once enough records have accumulated, the journal is
+ * <i>compacted</i> into a new snapshot. Opening a journal restores the values
+ * saved in the snapshot and the journal, in that order.
+ * <p>
+ * Records are encoded with a {@link PropertySetCodec} on the thread that
+ * changed the property, and written to disk on a background thread. A record
+ * that was only partly written when the application stopped is discarded on
+ * the next restore, so the saved values are always those of some complete
+ * sequence of changes. Use {@link #flush()} to wait until all changes are
+ * safely on disk.
+ * <p>
+ * The snapshot is stored in the given file, and the journal in a file of the
+ * same name with {@code ".journal"} appended. Both carry a generation number:
+ * a journal is only replayed over the snapshot of the same generation, so a
+ * compaction interrupted between replacing the snapshot and clearing the
+ * journal never replays stale changes.
+ * 
+ * @author William Chargin
+ * 
+ */
+public class PropertyJournal implements Closeable {
+
+	/**
+	 * The default number of records after which the journal is compacted.
+	 */
+	public static final int DEFAULT_COMPACTION_THRESHOLD = 1000;
+
+	/**
+	 * The length of the journal header: the codec header and the generation.
+	 */
+	private static final int JOURNAL_HEADER_LENGTH = 4 + 2 + 8;
+
+	/**
+	 * An input stream that counts the bytes read through it.
+	 * 
+	 * @author William Chargin
+	 * 
+	 */
+	private static final class CountingInputStream extends FilterInputStream {
+
+		/**
+		 * The number of bytes read so far.
+		 */
+		private long count;
+
+		/**
+		 * Creates the stream.
+		 * 
+		 * @param in
+		 *            the underlying stream
+		 */
+		private CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0) {
+				count++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0) {
+				count += n;
+			}
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			count += skipped;
+			return skipped;
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+	}
+
+	/**
+	 * The listener registered on each property.
+	 */
+	private final ValueChangeListener<Object> listener = new ValueChangeListener<Object>() {
+		@Override
+		public void valueChanged(AbstractProperty<? extends Object> property,
+				Object oldValue, Object newValue) {
+			append(property);
+		}
+	};
+
+	/**
+	 * The collection of properties given to the constructor.
+	 */
+	private final Collection<? extends AbstractProperty<?>> properties;
+
+	/**
+	 * The properties being journaled.
+	 */
+	private final List<AbstractProperty<?>> tracked;
+
+	/**
+	 * The codec used for the snapshot and the records.
+	 */
+	private final PropertySetCodec codec;
+
+	/**
+	 * The snapshot file.
+	 */
+	private final File snapshotFile;
+
+	/**
+	 * The open journal file.
+	 */
+	private final RandomAccessFile journal;
+
+	/**
+	 * The channel of the journal file, positioned at its end. It is only used
+	 * by the writer thread once the journal has been opened.
+	 */
+	private final FileChannel channel;
+
+	/**
+	 * The thread that writes to disk.
+	 */
+	private final ExecutorService writer;
+
+	/**
+	 * The buffer in which records are encoded.
+	 */
+	private final PropertySetCodec.RecordBuffer recordBuffer = new PropertySetCodec.RecordBuffer();
+
+	/**
+	 * The output to which records are encoded.
+	 */
+	private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+
+	/**
+	 * A data output writing to {@link #record}.
+	 */
+	private final DataOutputStream recordData = new DataOutputStream(record);
+
+	/**
+	 * The generation of the current snapshot and journal.
+	 */
+	private long generation;
+
+	/**
+	 * The number of records appended since the last compaction.
+	 */
+	private int appended;
+
+	/**
+	 * The number of records after which the journal is compacted, or zero to
+	 * compact only on request.
+	 */
+	private int compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+
+	/**
+	 * Whether this journal has been closed.
+	 */
+	private boolean closed;
+
+	/**
+	 * The first error encountered by the writer thread, if any. Once set, no
+	 * further records are written.
+	 */
+	private volatile IOException failure;
+
+	/**
+	 * Opens the journal for the given properties, restoring their values from
+	 * the given snapshot file and its journal if they exist, and starts
+	 * recording changes.
+	 * 
+	 * @param properties
+	 *            the properties to persist; properties added to the
+	 *            collection afterward are not journaled
+	 * @param codec
+	 *            the codec with which to encode values
+	 * @param file
+	 *            the snapshot file
+	 * @throws IOException
+	 *             if an I/O error occurs or the files are not in the expected
+	 *             format
+	 */
+	public PropertyJournal(
+			Collection<? extends AbstractProperty<?>> properties,
+			PropertySetCodec codec, File file) throws IOException {
+		super();
+		this.properties = properties;
+		this.tracked = new ArrayList<AbstractProperty<?>>(properties);
+		this.codec = codec;
+		this.snapshotFile = file;
+		this.journal = new RandomAccessFile(new File(file.getPath()
+				+ ".journal"), "rw"); //$NON-NLS-1$ //$NON-NLS-2$
+		this.channel = journal.getChannel();
+		try {
+			restore();
+		} catch (IOException ioe) {
+			journal.close();
+			throw ioe;
+		}
+		this.writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "PropertyJournal writer"); //$NON-NLS-1$
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		for (AbstractProperty<?> property : tracked) {
+			if (property != null) {
+				property.addValueChangeListener(listener);
+			}
+		}
+	}
+
+	/**
+	 * Restores the values from the snapshot and the journal, discards any
+	 * incomplete record at the end of the journal, and leaves the journal
+	 * channel positioned for appending.
+	 * 
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private void restore() throws IOException {
+		PropertySet batch = properties instanceof PropertySet ? (PropertySet) properties
+				: null;
+		if (batch != null) {
+			batch.beginBatch();
+		}
+		try {
+			generation = snapshotFile.exists() ? readSnapshot() : 0;
+			long end = replayJournal();
+			if (end < 0) {
+				resetJournal(generation);
+			} else {
+				channel.truncate(end);
+				channel.position(end);
+			}
+		} finally {
+			if (batch != null) {
+				batch.endBatch();
+			}
+		}
+	}
+
+	/**
+	 * Reads the snapshot into the properties.
+	 * 
+	 * @return the generation of the snapshot
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private long readSnapshot() throws IOException {
+		FileInputStream fis = new FileInputStream(snapshotFile);
+		try {
+			FileChannel in = fis.getChannel();
+			ByteBuffer header = ByteBuffer.allocate(8);
+			while (header.hasRemaining()) {
+				if (in.read(header) < 0) {
+					throw new EOFException("truncated snapshot"); //$NON-NLS-1$
+				}
+			}
+			header.flip();
+			long snapshotGeneration = header.getLong();
+			codec.read(tracked, in);
+			return snapshotGeneration;
+		} finally {
+			fis.close();
+		}
+	}
+
+	/**
+	 * Applies the records in the journal, if it belongs to the current
+	 * generation.
+	 * 
+	 * @return the offset just past the last complete record, or {@code -1} if
+	 *         the journal must be reset
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private long replayJournal() throws IOException {
+		channel.position(0);
+		CountingInputStream counter = new CountingInputStream(
+				new BufferedInputStream(Channels.newInputStream(channel)));
+		DataInputStream in = new DataInputStream(counter);
+		try {
+			PropertySetCodec.readHeader(in);
+			if (in.readLong() != generation) {
+				return -1;
+			}
+		} catch (EOFException eofe) {
+			return -1;
+		}
+		Map<String, AbstractProperty<?>> targets = PropertySetCodec
+				.byName(tracked);
+		long end = counter.count;
+		try {
+			while (codec.readRecord(in, targets) != PropertySetCodec.RECORD_END) {
+				end = counter.count;
+			}
+		} catch (IOException ioe) {
+			// An incomplete or garbled record at the end; everything before it
+			// is kept.
+		} catch (RuntimeException re) {
+			// Likewise.
+		}
+		return end;
+	}
+
+	/**
+	 * Empties the journal and writes a header for the given generation.
+	 * 
+	 * @param newGeneration
+	 *            the generation
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private void resetJournal(long newGeneration) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+				JOURNAL_HEADER_LENGTH);
+		DataOutputStream out = new DataOutputStream(bytes);
+		PropertySetCodec.writeHeader(out);
+		out.writeLong(newGeneration);
+		channel.truncate(0);
+		channel.position(0);
+		writeFully(ByteBuffer.wrap(bytes.toByteArray()));
+		channel.force(false);
+	}
+
+	/**
+	 * Writes the whole buffer to the journal.
+	 * 
+	 * @param buffer
+	 *            the buffer
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private void writeFully(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	/**
+	 * Encodes a record for the current value of the given property and queues
+	 * it for writing, compacting the journal if the threshold is reached.
+	 * 
+	 * @param property
+	 *            the property that changed
+	 */
+	private synchronized void append(AbstractProperty<?> property) {
+		if (closed) {
+			return;
+		}
+		record.reset();
+		try {
+			if (!codec.writeRecord(property, recordData, recordBuffer)) {
+				return;
+			}
+		} catch (IOException ioe) {
+			// Cannot happen when writing to memory.
+			throw new RuntimeException(ioe);
+		}
+		final byte[] bytes = record.toByteArray();
+		writer.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (failure != null) {
+					return;
+				}
+				try {
+					writeFully(ByteBuffer.wrap(bytes));
+				} catch (IOException ioe) {
+					failure = ioe;
+				}
+			}
+		});
+		if (++appended >= compactionThreshold && compactionThreshold > 0) {
+			compact();
+		}
+	}
+
+	/**
+	 * Writes a new snapshot of the current values in the background and
+	 * clears the journal. The values are captured immediately, on the calling
+	 * thread, so that the snapshot is consistent with the journal, but they are
+	 * encoded and written in the background; the caller (which, for automatic
+	 * compaction, is whichever thread set a value) does not wait for the
+	 * encoding.
+	 */
+	public synchronized void compact() {
+		if (closed) {
+			return;
+		}
+		final List<Object> values = new ArrayList<Object>(tracked.size());
+		for (AbstractProperty<?> property : tracked) {
+			values.add(property == null ? null : property.getValue());
+		}
+		final long newGeneration = generation + 1;
+		generation = newGeneration;
+		appended = 0;
+		writer.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (failure != null) {
+					return;
+				}
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				try {
+					new DataOutputStream(bytes).writeLong(newGeneration);
+					codec.write(tracked, values, Channels.newChannel(bytes));
+					writeSnapshot(bytes.toByteArray());
+					resetJournal(newGeneration);
+				} catch (IOException ioe) {
+					failure = ioe;
+				}
+			}
+		});
+	}
+
+	/**
+	 * Replaces the snapshot file with the given contents, by writing a
+	 * temporary file and renaming it.
+	 * 
+	 * @param snapshot
+	 *            the contents
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private void writeSnapshot(byte[] snapshot) throws IOException {
+		File temp = new File(snapshotFile.getPath() + ".tmp"); //$NON-NLS-1$
+		FileOutputStream fos = new FileOutputStream(temp);
+		try {
+			fos.write(snapshot);
+			fos.getChannel().force(true);
+		} finally {
+			fos.close();
+		}
+		if (!temp.renameTo(snapshotFile)) {
+			// Some platforms do not replace an existing file on rename.
+			if (!snapshotFile.delete() || !temp.renameTo(snapshotFile)) {
+				throw new IOException("cannot replace " + snapshotFile); //$NON-NLS-1$
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of records after which the journal is compacted.
+	 * 
+	 * @return the threshold, or zero if the journal is only compacted by
+	 *         calling {@link #compact()}
+	 */
+	public synchronized int getCompactionThreshold() {
+		return compactionThreshold;
+	}
+
+	/**
+	 * Sets the number of records after which the journal is compacted.
+	 * 
+	 * @param compactionThreshold
+	 *            the threshold, or zero to compact only by calling
+	 *            {@link #compact()}
+	 * @throws IllegalArgumentException
+	 *             if the threshold is negative
+	 */
+	public synchronized void setCompactionThreshold(int compactionThreshold)
+			throws IllegalArgumentException {
+		if (compactionThreshold < 0) {
+			throw new IllegalArgumentException("negative threshold"); //$NON-NLS-1$
+		}
+		this.compactionThreshold = compactionThreshold;
+	}
+
+	/**
+	 * Waits until every change recorded so far has been written and forced to
+	 * disk.
+	 * 
+	 * @throws IOException
+	 *             if an I/O error occurred while writing, now or earlier
+	 */
+	public void flush() throws IOException {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+		}
+		try {
+			writer.submit(new Runnable() {
+				@Override
+				public void run() {
+					if (failure != null) {
+						return;
+					}
+					try {
+						channel.force(false);
+					} catch (IOException ioe) {
+						failure = ioe;
+					}
+				}
+			}).get();
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} catch (ExecutionException ee) {
+			throw new IOException(ee.getCause());
+		}
+		checkFailure();
+	}
+
+	/**
+	 * Stops recording changes, waits until every change recorded so far has
+	 * been written, and closes the journal file.
+	 * 
+	 * @throws IOException
+	 *             if an I/O error occurred while writing, now or earlier
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			for (AbstractProperty<?> property : tracked) {
+				if (property != null) {
+					property.removeValueChangeListener(listener);
+				}
+			}
+		}
+		writer.shutdown();
+		try {
+			while (!writer.awaitTermination(1, TimeUnit.MINUTES)) {
+				// keep waiting
+			}
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} finally {
+			journal.close();
+		}
+		checkFailure();
+	}
+
+	/**
+	 * Throws the error encountered by the writer thread, if any.
+	 * 
+	 * @throws IOException
+	 *             the error
+	 */
+	private void checkFailure() throws IOException {
+		IOException ioe = failure;
+		if (ioe != null) {
+			throw ioe;
+		}
+	}
+}
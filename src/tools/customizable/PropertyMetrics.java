@@ -0,0 +1,480 @@
+package tools.customizable;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters for the change traffic of properties, published as MBeans. When
+ * metrics are {@linkplain #setEnabled(boolean) enabled}, one instance is kept
+ * for each property class, and further instances may be kept for individual
+ * properties with {@link #watch(AbstractProperty)}. Each is registered with
+ * the platform MBean server under the domain {@code tools.customizable}.
+ * <p>
+ * Metrics are disabled by default, in which case the only cost to properties
+ * is reading one {@code volatile} flag per operation. Live editor and viewer
+ * counts include only the components created while metrics were enabled.
+ * 
+ * @author William Chargin
+ * 
+ */
+public class PropertyMetrics implements PropertyMetricsMBean {
+
+	/**
+	 * The domain of the MBean names.
+	 */
+	private static final String DOMAIN = "tools.customizable"; //$NON-NLS-1$
+
+	/**
+	 * Whether metrics are collected.
+	 */
+	private static volatile boolean enabled;
+
+	/**
+	 * The metrics for each property class.
+	 */
+	private static final ConcurrentMap<Class<?>, PropertyMetrics> byType = new ConcurrentHashMap<Class<?>, PropertyMetrics>();
+
+	/**
+	 * The name under which this instance is registered.
+	 */
+	private final ObjectName name;
+
+	/**
+	 * The properties whose editors and viewers are counted, as the keys of a
+	 * weak map.
+	 */
+	private final Map<AbstractSwingProperty<?, ?, ?>, Boolean> sources = new WeakHashMap<AbstractSwingProperty<?, ?, ?>, Boolean>();
+
+	/**
+	 * The number of value changes.
+	 */
+	private final AtomicLong valueChanges = new AtomicLong();
+
+	/**
+	 * The number of events delivered.
+	 */
+	private final AtomicLong events = new AtomicLong();
+
+	/**
+	 * The number of listener invocations.
+	 */
+	private final AtomicLong listenerCalls = new AtomicLong();
+
+	/**
+	 * The largest fan-out.
+	 */
+	private final AtomicInteger maxFanOut = new AtomicInteger();
+
+	/**
+	 * The time spent in listeners.
+	 */
+	private final AtomicLong listenerTime = new AtomicLong();
+
+	/**
+	 * The time spent updating editors.
+	 */
+	private final AtomicLong editorUpdateTime = new AtomicLong();
+
+	/**
+	 * The time spent updating viewers.
+	 */
+	private final AtomicLong viewerUpdateTime = new AtomicLong();
+
+	/**
+	 * The duration of the slowest listener invocation.
+	 */
+	private volatile long slowestListenerTime;
+
+	/**
+	 * The class of the slowest listener.
+	 */
+	private volatile String slowestListener;
+
+	/**
+	 * Creates the metrics with the given name.
+	 * 
+	 * @param name
+	 *            the MBean name
+	 */
+	private PropertyMetrics(ObjectName name) {
+		super();
+		this.name = name;
+	}
+
+	/**
+	 * Determines whether metrics are collected.
+	 * 
+	 * @return {@code true} if metrics are enabled
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Sets whether metrics are collected. Counters are kept while metrics are
+	 * disabled, and collection resumes from them when they are enabled again.
+	 * 
+	 * @param enabled
+	 *            {@code true} to collect metrics
+	 */
+	public static void setEnabled(boolean enabled) {
+		PropertyMetrics.enabled = enabled;
+	}
+
+	/**
+	 * Gets the metrics for the given property class, creating and registering
+	 * them if necessary.
+	 * 
+	 * @param type
+	 *            the property class
+	 * @return the metrics
+	 */
+	public static PropertyMetrics forType(Class<?> type) {
+		PropertyMetrics metrics = byType.get(type);
+		if (metrics == null) {
+			PropertyMetrics created = new PropertyMetrics(
+					createName("type=" + ObjectName.quote(type.getName()))); //$NON-NLS-1$
+			metrics = byType.putIfAbsent(type, created);
+			if (metrics == null) {
+				metrics = created;
+				metrics.register();
+			}
+		}
+		return metrics;
+	}
+
+	/**
+	 * Starts keeping separate metrics for the given property, and registers
+	 * them. The metrics are also counted in those of the property's class.
+	 * 
+	 * @param property
+	 *            the property
+	 * @return the metrics for the property
+	 * @see #unwatch(AbstractProperty)
+	 */
+	public static PropertyMetrics watch(AbstractProperty<?> property) {
+		synchronized (property) {
+			PropertyMetrics metrics = property.metrics;
+			if (metrics == null) {
+				metrics = new PropertyMetrics(createName("type=" //$NON-NLS-1$
+						+ ObjectName.quote(property.getClass().getName())
+						+ ",property=" //$NON-NLS-1$
+						+ ObjectName.quote(String.valueOf(property.getName()))
+						+ ",id=" + System.identityHashCode(property))); //$NON-NLS-1$
+				if (property instanceof AbstractSwingProperty) {
+					metrics.addSource((AbstractSwingProperty<?, ?, ?>) property);
+				}
+				metrics.register();
+				property.metrics = metrics;
+			}
+			return metrics;
+		}
+	}
+
+	/**
+	 * Stops keeping separate metrics for the given property, and unregisters
+	 * them.
+	 * 
+	 * @param property
+	 *            the property
+	 */
+	public static void unwatch(AbstractProperty<?> property) {
+		PropertyMetrics metrics;
+		synchronized (property) {
+			metrics = property.metrics;
+			property.metrics = null;
+		}
+		if (metrics != null) {
+			metrics.unregister();
+		}
+	}
+
+	/**
+	 * Creates an MBean name in this domain.
+	 * 
+	 * @param properties
+	 *            the key properties
+	 * @return the name
+	 */
+	private static ObjectName createName(String properties) {
+		try {
+			return new ObjectName(DOMAIN + ":" + properties); //$NON-NLS-1$
+		} catch (JMException jme) {
+			throw new IllegalArgumentException(jme);
+		}
+	}
+
+	/**
+	 * Registers this instance with the platform MBean server.
+	 */
+	private void register() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			if (!server.isRegistered(name)) {
+				server.registerMBean(this, name);
+			}
+		} catch (JMException jme) {
+			// The metrics are still collected, just not published.
+		}
+	}
+
+	/**
+	 * Unregisters this instance from the platform MBean server.
+	 */
+	private void unregister() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		} catch (JMException jme) {
+			// Already gone.
+		}
+	}
+
+	/**
+	 * Gets the name under which this instance is registered.
+	 * 
+	 * @return the MBean name
+	 */
+	public ObjectName getName() {
+		return name;
+	}
+
+	/**
+	 * Records that the value of the given property changed.
+	 * 
+	 * @param property
+	 *            the property
+	 */
+	static void valueChanged(AbstractProperty<?> property) {
+		forType(property.getClass()).valueChanges.incrementAndGet();
+		PropertyMetrics metrics = property.metrics;
+		if (metrics != null) {
+			metrics.valueChanges.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Records that an event of the given property was delivered to the given
+	 * number of listeners.
+	 * 
+	 * @param property
+	 *            the property
+	 * @param fanOut
+	 *            the number of listeners
+	 */
+	static void eventFired(AbstractProperty<?> property, int fanOut) {
+		forType(property.getClass()).recordEvent(fanOut);
+		PropertyMetrics metrics = property.metrics;
+		if (metrics != null) {
+			metrics.recordEvent(fanOut);
+		}
+	}
+
+	/**
+	 * Records one invocation of a listener of the given property.
+	 * 
+	 * @param property
+	 *            the property
+	 * @param listener
+	 *            the listener
+	 * @param nanos
+	 *            the time the invocation took
+	 */
+	static void listenerCalled(AbstractProperty<?> property, Object listener,
+			long nanos) {
+		forType(property.getClass()).recordListener(listener, nanos);
+		PropertyMetrics metrics = property.metrics;
+		if (metrics != null) {
+			metrics.recordListener(listener, nanos);
+		}
+	}
+
+	/**
+	 * Records the time spent updating the editors or viewers of the given
+	 * property.
+	 * 
+	 * @param property
+	 *            the property
+	 * @param editors
+	 *            {@code true} for editors, {@code false} for viewers
+	 * @param nanos
+	 *            the time the update took
+	 */
+	static void componentsUpdated(AbstractSwingProperty<?, ?, ?> property,
+			boolean editors, long nanos) {
+		PropertyMetrics type = forType(property.getClass());
+		PropertyMetrics metrics = property.metrics;
+		(editors ? type.editorUpdateTime : type.viewerUpdateTime)
+				.addAndGet(nanos);
+		if (metrics != null) {
+			(editors ? metrics.editorUpdateTime : metrics.viewerUpdateTime)
+					.addAndGet(nanos);
+		}
+	}
+
+	/**
+	 * Records that the given property created an editor or viewer, so that
+	 * its components are included in the live counts of its class.
+	 * 
+	 * @param property
+	 *            the property
+	 */
+	static void componentCreated(AbstractSwingProperty<?, ?, ?> property) {
+		forType(property.getClass()).addSource(property);
+	}
+
+	/**
+	 * Includes the components of the given property in the live counts.
+	 * 
+	 * @param property
+	 *            the property
+	 */
+	private void addSource(AbstractSwingProperty<?, ?, ?> property) {
+		synchronized (sources) {
+			sources.put(property, Boolean.TRUE);
+		}
+	}
+
+	/**
+	 * Records an event.
+	 * 
+	 * @param fanOut
+	 *            the number of listeners notified
+	 */
+	private void recordEvent(int fanOut) {
+		events.incrementAndGet();
+		int max;
+		while (fanOut > (max = maxFanOut.get())
+				&& !maxFanOut.compareAndSet(max, fanOut)) {
+			// Retry.
+		}
+	}
+
+	/**
+	 * Records a listener invocation.
+	 * 
+	 * @param listener
+	 *            the listener
+	 * @param nanos
+	 *            the time the invocation took
+	 */
+	private void recordListener(Object listener, long nanos) {
+		listenerCalls.incrementAndGet();
+		listenerTime.addAndGet(nanos);
+		if (nanos > slowestListenerTime) {
+			synchronized (this) {
+				if (nanos > slowestListenerTime) {
+					slowestListenerTime = nanos;
+					slowestListener = listener.getClass().getName();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets a snapshot of the properties whose components are counted.
+	 * 
+	 * @return the properties
+	 */
+	private List<AbstractSwingProperty<?, ?, ?>> getSources() {
+		synchronized (sources) {
+			return new ArrayList<AbstractSwingProperty<?, ?, ?>>(
+					sources.keySet());
+		}
+	}
+
+	@Override
+	public long getValueChanges() {
+		return valueChanges.get();
+	}
+
+	@Override
+	public long getEvents() {
+		return events.get();
+	}
+
+	@Override
+	public long getListenerCalls() {
+		return listenerCalls.get();
+	}
+
+	@Override
+	public double getAverageFanOut() {
+		long n = events.get();
+		return n == 0 ? 0 : (double) listenerCalls.get() / n;
+	}
+
+	@Override
+	public int getMaxFanOut() {
+		return maxFanOut.get();
+	}
+
+	@Override
+	public long getListenerTime() {
+		return listenerTime.get();
+	}
+
+	@Override
+	public String getSlowestListener() {
+		return slowestListener;
+	}
+
+	@Override
+	public long getSlowestListenerTime() {
+		return slowestListenerTime;
+	}
+
+	@Override
+	public long getEditorUpdateTime() {
+		return editorUpdateTime.get();
+	}
+
+	@Override
+	public long getViewerUpdateTime() {
+		return viewerUpdateTime.get();
+	}
+
+	@Override
+	public int getLiveEditors() {
+		int count = 0;
+		for (AbstractSwingProperty<?, ?, ?> property : getSources()) {
+			count += property.getLiveEditorCount();
+		}
+		return count;
+	}
+
+	@Override
+	public int getLiveViewers() {
+		int count = 0;
+		for (AbstractSwingProperty<?, ?, ?> property : getSources()) {
+			count += property.getLiveViewerCount();
+		}
+		return count;
+	}
+
+	@Override
+	public synchronized void reset() {
+		valueChanges.set(0);
+		events.set(0);
+		listenerCalls.set(0);
+		maxFanOut.set(0);
+		listenerTime.set(0);
+		editorUpdateTime.set(0);
+		viewerUpdateTime.set(0);
+		slowestListenerTime = 0;
+		slowestListener = null;
+	}
+}
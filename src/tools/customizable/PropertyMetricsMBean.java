@@ -0,0 +1,101 @@
+package tools.customizable;
+
+/**
+ * The management interface of {@link PropertyMetrics}. Times are in
+ * nanoseconds.
+ * 
+ * @author William Chargin
+ * 
+ */
+public interface PropertyMetricsMBean {
+
+	/**
+	 * Gets the number of times a value has changed.
+	 * 
+	 * @return the number of value changes
+	 */
+	public long getValueChanges();
+
+	/**
+	 * Gets the number of change and value events delivered to at least one
+	 * listener.
+	 * 
+	 * @return the number of events
+	 */
+	public long getEvents();
+
+	/**
+	 * Gets the number of listener invocations.
+	 * 
+	 * @return the number of listener invocations
+	 */
+	public long getListenerCalls();
+
+	/**
+	 * Gets the average number of listeners notified per event.
+	 * 
+	 * @return the average fan-out, or {@code 0} if there have been no events
+	 */
+	public double getAverageFanOut();
+
+	/**
+	 * Gets the largest number of listeners notified of one event.
+	 * 
+	 * @return the maximum fan-out
+	 */
+	public int getMaxFanOut();
+
+	/**
+	 * Gets the total time spent in listeners.
+	 * 
+	 * @return the time, in nanoseconds
+	 */
+	public long getListenerTime();
+
+	/**
+	 * Gets the class of the listener with the slowest single invocation.
+	 * 
+	 * @return the class name, or {@code null} if no listener has been called
+	 */
+	public String getSlowestListener();
+
+	/**
+	 * Gets the duration of the slowest single listener invocation.
+	 * 
+	 * @return the time, in nanoseconds
+	 */
+	public long getSlowestListenerTime();
+
+	/**
+	 * Gets the total time spent updating editors.
+	 * 
+	 * @return the time, in nanoseconds
+	 */
+	public long getEditorUpdateTime();
+
+	/**
+	 * Gets the total time spent updating viewers.
+	 * 
+	 * @return the time, in nanoseconds
+	 */
+	public long getViewerUpdateTime();
+
+	/**
+	 * Gets the number of editors currently kept up to date.
+	 * 
+	 * @return the number of live editors
+	 */
+	public int getLiveEditors();
+
+	/**
+	 * Gets the number of viewers currently kept up to date.
+	 * 
+	 * @return the number of live viewers
+	 */
+	public int getLiveViewers();
+
+	/**
+	 * Resets all counters and times to zero.
+	 */
+	public void reset();
+}
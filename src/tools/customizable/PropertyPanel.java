@@ -2,17 +2,17 @@ package tools.customizable;
 
 import java.awt.CardLayout;
 import java.awt.Color;
-import java.awt.Component;
-import java.awt.Container;
 import java.awt.Font;
-import java.awt.LayoutManager;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
+import javax.swing.JComponent;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JSeparator;
@@ -60,6 +60,17 @@ public class PropertyPanel extends JPanel {
 	 */
 	private final List<AbstractProperty<?>> propertySet;
 
+	/**
+	 * The value panels of a changeable property panel, in display order.
+	 */
+	private final List<ValueCard> valueCards = new ArrayList<ValueCard>();
+
+	/**
+	 * The editors and viewers created for this panel, each mapped to the
+	 * property that created it.
+	 */
+	private final Map<JComponent, AbstractSwingProperty<?, ?, ?>> components = new IdentityHashMap<JComponent, AbstractSwingProperty<?, ?, ?>>();
+
 	/**
 	 * Creates the property panel with the given parameters.
 	 * 
@@ -75,12 +86,7 @@ public class PropertyPanel extends JPanel {
 	public PropertyPanel(Collection<? extends AbstractProperty<?>> properties,
 			boolean editMode, boolean changeableMode) {
 		super(new MigLayout());
-		ArrayList<AbstractProperty<?>> ps = new ArrayList<AbstractProperty<?>>();
-		for (AbstractProperty<?> property : properties) {
-			ps.add(property);
-		}
-		ps.addAll(properties);
-		propertySet = ps;
+		propertySet = new ArrayList<AbstractProperty<?>>(properties);
 		isChangeable = changeableMode;
 		if (changeableMode) {
 			for (AbstractProperty<?> property : properties) {
@@ -115,31 +121,25 @@ public class PropertyPanel extends JPanel {
 					lblName.setHorizontalAlignment(JLabel.TRAILING);
 
 					clName.show(pnlName, sp.isEnabled() ? ENABLED : DISABLED);
-					sp.addChangeListener(new ChangeListener() {
-						@Override
-						public void stateChanged(ChangeEvent ce) {
-							clName.show(pnlName, sp.isEnabled() ? ENABLED
-									: DISABLED);
-							if (sp.getEditAction().equals(EditAction.ACTION)) {
-								tglbtnName.setSelected(false);
-							}
-						}
-					});
-
-					final CardLayout clValue = new CardLayout();
-					final JPanel pnlValue = new JPanel(clValue);
-					pnlValue.setOpaque(false);
-					pnlValue.setBackground(new Color(255, 255, 255, 0));
-					pnlValue.add(sp.getEditor(), EDIT);
-					pnlValue.add(sp.getViewer(), VIEW);
-					clValue.show(pnlValue, editMode ? EDIT : VIEW);
+					final ValueCard card = new ValueCard(sp, editMode,
+							new ChangeListener() {
+								@Override
+								public void stateChanged(ChangeEvent ce) {
+									clName.show(pnlName,
+											sp.isEnabled() ? ENABLED : DISABLED);
+									if (sp.getEditAction().equals(
+											EditAction.ACTION)) {
+										tglbtnName.setSelected(false);
+									}
+								}
+							});
+					valueCards.add(card);
 					tglbtnName.addActionListener(new ActionListener() {
 						@Override
 						public void actionPerformed(ActionEvent ae) {
 							switch (sp.getEditAction()) {
 							case EDIT:
-								clValue.show(pnlValue,
-										tglbtnName.isSelected() ? EDIT : VIEW);
+								card.show(tglbtnName.isSelected());
 								break;
 							case ACTION:
 								tglbtnName.setSelected(false);
@@ -151,7 +151,7 @@ public class PropertyPanel extends JPanel {
 							}
 						}
 					});
-					add(pnlValue, new CC().grow().wrap());
+					add(card.panel, new CC().grow().wrap());
 				}
 			}
 		} else {
@@ -170,8 +170,9 @@ public class PropertyPanel extends JPanel {
 					label.setHorizontalAlignment(JLabel.TRAILING);
 					label.setToolTipText(sp.getDescription());
 					add(label, new CC().alignX("right")); //$NON-NLS-1$
-					add(editMode ? sp.getEditor() : sp.getViewer(), new CC()
-							.grow().wrap().pushX());
+					JComponent c = editMode ? sp.getEditor() : sp.getViewer();
+					components.put(c, sp);
+					add(c, new CC().grow().wrap().pushX());
 				}
 			}
 		}
@@ -191,19 +192,33 @@ public class PropertyPanel extends JPanel {
 		if (!isChangeable) {
 			return false;
 		} else {
-			for (Component component : getComponents()) {
-				if (component instanceof JPanel) {
-					LayoutManager lm = ((JPanel) component).getLayout();
-					if (lm instanceof CardLayout) {
-						((CardLayout) lm).show((Container) component,
-								editing ? EDIT : VIEW);
-					}
-				}
+			for (ValueCard card : valueCards) {
+				card.show(editing);
 			}
 			return true;
 		}
 	}
 
+	/**
+	 * Disposes of this panel: removes the listeners it registered on its
+	 * properties, releases the editors and viewers it created, and removes
+	 * all of its components. The panel should not be used afterward.
+	 */
+	public void dispose() {
+		for (ValueCard card : valueCards) {
+			card.property.removeChangeListener(card.listener);
+		}
+		valueCards.clear();
+		for (Map.Entry<JComponent, AbstractSwingProperty<?, ?, ?>> entry : components
+				.entrySet()) {
+			entry.getValue().release(entry.getKey());
+		}
+		components.clear();
+		removeAll();
+		revalidate();
+		repaint();
+	}
+
 	/**
 	 * Gets an unmodifiable copy of the properties in this panel.
 	 * 
@@ -213,4 +228,92 @@ public class PropertyPanel extends JPanel {
 		return Collections.unmodifiableList(propertySet);
 	}
 
+	/**
+	 * The value panel for one property in a changeable property panel. It
+	 * switches between the property's editor and viewer, creating each only
+	 * the first time it is shown.
+	 * 
+	 * @author William Chargin
+	 * 
+	 */
+	private final class ValueCard {
+
+		/**
+		 * The property displayed.
+		 */
+		private final AbstractSwingProperty<?, ?, ?> property;
+
+		/**
+		 * The listener that updates the name of the property. It is
+		 * registered {@linkplain AbstractProperty#addWeakChangeListener(ChangeListener)
+		 * weakly}, so this reference keeps it alive exactly as long as the
+		 * panel.
+		 */
+		private final ChangeListener listener;
+
+		/**
+		 * The layout of {@link #panel}.
+		 */
+		private final CardLayout layout = new CardLayout();
+
+		/**
+		 * The panel holding the editor and viewer.
+		 */
+		private final JPanel panel = new JPanel(layout);
+
+		/**
+		 * Whether the editor has been created.
+		 */
+		private boolean hasEditor;
+
+		/**
+		 * Whether the viewer has been created.
+		 */
+		private boolean hasViewer;
+
+		/**
+		 * Creates the value panel, showing the editor or the viewer.
+		 * 
+		 * @param property
+		 *            the property to display
+		 * @param editing
+		 *            whether to show the editor ({@code true}) or the viewer (
+		 *            {@code false})
+		 * @param listener
+		 *            the listener to register on the property
+		 */
+		private ValueCard(AbstractSwingProperty<?, ?, ?> property,
+				boolean editing, ChangeListener listener) {
+			this.property = property;
+			this.listener = listener;
+			property.addWeakChangeListener(listener);
+			panel.setOpaque(false);
+			panel.setBackground(new Color(255, 255, 255, 0));
+			show(editing);
+		}
+
+		/**
+		 * Shows the editor or the viewer, creating it if necessary.
+		 * 
+		 * @param editing
+		 *            whether to show the editor ({@code true}) or the viewer (
+		 *            {@code false})
+		 */
+		private void show(boolean editing) {
+			if (editing && !hasEditor) {
+				JComponent editor = property.getEditor();
+				components.put(editor, property);
+				panel.add(editor, EDIT);
+				hasEditor = true;
+				panel.revalidate();
+			} else if (!editing && !hasViewer) {
+				JComponent viewer = property.getViewer();
+				components.put(viewer, property);
+				panel.add(viewer, VIEW);
+				hasViewer = true;
+				panel.revalidate();
+			}
+			layout.show(panel, editing ? EDIT : VIEW);
+		}
+	}
 }
@@ -3,6 +3,13 @@ package tools.customizable;
 import java.util.ArrayList;
 import java.util.Collection;
 
+/**
+ * An ordered collection of properties. A {@code null} element is permitted and
+ * is displayed as a separator by a {@link PropertyPanel}.
+ * 
+ * @author William Chargin
+ * 
+ */
 public class PropertySet extends ArrayList<AbstractProperty<?>> {
 
 	/**
@@ -10,6 +17,16 @@ public class PropertySet extends ArrayList<AbstractProperty<?>> {
 	 */
 	private static final long serialVersionUID = 1L;
 
+	/**
+	 * The number of batches currently open on this set.
+	 */
+	private transient int batchDepth;
+
+	/**
+	 * The properties that were in this set when the outermost batch began.
+	 */
+	private transient ArrayList<AbstractProperty<?>> batchMembers;
+
 	/**
 	 * Creates an empty property set.
 	 */
@@ -32,5 +49,90 @@ public class PropertySet extends ArrayList<AbstractProperty<?>> {
 		add(property);
 	}
 
-	
+	/**
+	 * Begins a batch of changes. Until the matching call to
+	 * {@link #endBatch()}, the properties in this set defer updating their editors and viewers
+	 * and notifying their listeners; each property that changed is then
+	 * updated and notifies its listeners exactly once. Batches may be nested.
+	 * <p>
+	 * Properties added to this set while a batch is open do not take part in
+	 * that batch.
+	 * <p>
+	 * A batch may be opened and closed on any thread, but on only one. Value
+	 * listeners are notified on the thread that ends the batch; editors,
+	 * viewers, and change listeners are always updated on the event dispatch
+	 * thread.
+	 */
+	public void beginBatch() {
+		if (batchDepth++ > 0) {
+			return;
+		}
+		batchMembers = new ArrayList<AbstractProperty<?>>(size());
+		for (AbstractProperty<?> property : this) {
+			if (property != null) {
+				batchMembers.add(property);
+				property.beginBatch();
+			}
+		}
+	}
+
+	/**
+	 * Ends a batch of changes begun with {@link #beginBatch()}. If this ends
+	 * the outermost batch, the deferred updates and notifications are
+	 * delivered.
+	 * 
+	 * @throws IllegalStateException
+	 *             if no batch is in progress
+	 */
+	public void endBatch() throws IllegalStateException {
+		if (batchDepth == 0) {
+			throw new IllegalStateException("no batch in progress"); //$NON-NLS-1$
+		}
+		if (--batchDepth > 0) {
+			return;
+		}
+		ArrayList<AbstractProperty<?>> members = batchMembers;
+		batchMembers = null;
+		RuntimeException failure = null;
+		for (AbstractProperty<?> property : members) {
+			// Every property must leave the batch, even if a listener on an
+			// earlier one throws.
+			try {
+				property.endBatch();
+			} catch (RuntimeException re) {
+				if (failure == null) {
+					failure = re;
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Determines whether a batch is in progress on this set.
+	 * 
+	 * @return {@code true} if a batch is in progress
+	 */
+	public boolean isBatching() {
+		return batchDepth > 0;
+	}
+
+	/**
+	 * Runs the given task inside a batch, ending the batch even if the task
+	 * throws.
+	 * 
+	 * @param task
+	 *            the task to run
+	 * @see #beginBatch()
+	 */
+	public void runBatch(Runnable task) {
+		beginBatch();
+		try {
+			task.run();
+		} finally {
+			endBatch();
+		}
+	}
 }
@@ -0,0 +1,985 @@
+package tools.customizable;
+
+import java.awt.Color;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact, versioned binary format for the values of a set of properties.
+ * Unlike Java serialization, only the name and value of each property are
+ * stored, so the format does not depend on the classes of the properties and
+ * is not broken by changes to them. Values are read back into an existing set
+ * of properties, matched by name; unknown names, values of unknown types, and
+ * values that the matching property cannot hold (including {@code null}, for
+ * most properties) are skipped.
+ * <p>
+ * Encoders for {@code Boolean}, {@code Integer}, {@code Long}, {@code Double},
+ * {@code String}, {@link Time}, {@link Color}, {@link File}, and enums are
+ * built in, as is support for the choices of a {@link MultipleChoiceProperty}.
+ * Other types may be added with {@link #register(int, Class, ValueCodec)}.
+ * <p>
+ * A stream consists of a header (the magic number {@code "C2PS"} and a
+ * version number) and a sequence of records, each holding a property name, a
+ * type tag, and the length and bytes of the encoded value, followed by an end
+ * marker.
+ * 
+ * @author William Chargin
+ * 
+ */
+public class PropertySetCodec {
+
+	/**
+	 * An encoder and decoder for values of one type.
+	 * 
+	 * @author William Chargin
+	 * 
+	 * @param <T>
+	 *            the type of value
+	 */
+	public interface ValueCodec<T> {
+
+		/**
+		 * Writes the given value.
+		 * 
+		 * @param value
+		 *            the value, which is never {@code null}
+		 * @param out
+		 *            the output
+		 * @throws IOException
+		 *             if an I/O error occurs
+		 */
+		public void write(T value, DataOutput out) throws IOException;
+
+		/**
+		 * Reads a value written by {@link #write(Object, DataOutput)}.
+		 * 
+		 * @param in
+		 *            the input
+		 * @return the value
+		 * @throws IOException
+		 *             if an I/O error occurs
+		 */
+		public T read(DataInput in) throws IOException;
+	}
+
+	/**
+	 * The magic number at the start of every stream ({@code "C2PS"}).
+	 */
+	static final int MAGIC = 0x43325053;
+
+	/**
+	 * The current format version.
+	 */
+	static final int VERSION = 1;
+
+	/**
+	 * The tag for a {@code null} value.
+	 */
+	static final int TAG_NULL = 0;
+
+	/**
+	 * The tag for a {@code Boolean}.
+	 */
+	static final int TAG_BOOLEAN = 1;
+
+	/**
+	 * The tag for an {@code Integer}.
+	 */
+	static final int TAG_INT = 2;
+
+	/**
+	 * The tag for a {@code Long}.
+	 */
+	static final int TAG_LONG = 3;
+
+	/**
+	 * The tag for a {@code Double}.
+	 */
+	static final int TAG_DOUBLE = 4;
+
+	/**
+	 * The tag for a {@code String}.
+	 */
+	static final int TAG_STRING = 5;
+
+	/**
+	 * The tag for a {@link Time}.
+	 */
+	static final int TAG_TIME = 6;
+
+	/**
+	 * The tag for a {@link Color}.
+	 */
+	static final int TAG_COLOR = 7;
+
+	/**
+	 * The tag for a {@link File}.
+	 */
+	static final int TAG_FILE = 8;
+
+	/**
+	 * The tag for an enum constant, stored by name.
+	 */
+	static final int TAG_ENUM = 9;
+
+	/**
+	 * The tag for the choice of a {@link MultipleChoiceProperty}, stored as its
+	 * name (or string form) and index.
+	 */
+	static final int TAG_CHOICE = 10;
+
+	/**
+	 * The first tag available to {@link #register(int, Class, ValueCodec)
+	 * registered} codecs.
+	 */
+	public static final int FIRST_USER_TAG = 32;
+
+	/**
+	 * The largest permitted tag.
+	 */
+	private static final int MAX_TAG = 255;
+
+	/**
+	 * The name length written in place of a record to mark the end of a
+	 * stream.
+	 */
+	private static final int END_OF_RECORDS = -1;
+
+	/**
+	 * The largest length accepted for a name, string, or encoded value. Longer
+	 * lengths can only come from a corrupt or foreign stream.
+	 */
+	private static final int MAX_LENGTH = 1 << 30;
+
+	/**
+	 * The number of bytes allocated at a time when reading a name, string, or
+	 * encoded value, so that a corrupt length cannot allocate more memory than
+	 * the stream actually supplies.
+	 */
+	private static final int READ_CHUNK = 1 << 16;
+
+	/**
+	 * The result of {@link #readRecord(DataInput, Map)} if the end marker was
+	 * read.
+	 */
+	static final int RECORD_END = 0;
+
+	/**
+	 * The result of {@link #readRecord(DataInput, Map)} if the value was
+	 * applied to a property.
+	 */
+	static final int RECORD_APPLIED = 1;
+
+	/**
+	 * The result of {@link #readRecord(DataInput, Map)} if the record was
+	 * skipped.
+	 */
+	static final int RECORD_SKIPPED = 2;
+
+	/**
+	 * The charset used for strings.
+	 */
+	private static final Charset UTF_8 = Charset.forName("UTF-8"); //$NON-NLS-1$
+
+	/**
+	 * A type and its codec.
+	 * 
+	 * @author William Chargin
+	 * 
+	 */
+	private static final class Entry {
+
+		/**
+		 * The tag written for this type.
+		 */
+		private final int tag;
+
+		/**
+		 * The type of value.
+		 */
+		private final Class<?> type;
+
+		/**
+		 * The codec.
+		 */
+		private final ValueCodec<?> codec;
+
+		/**
+		 * Creates the entry.
+		 * 
+		 * @param tag
+		 *            the tag
+		 * @param type
+		 *            the type
+		 * @param codec
+		 *            the codec
+		 */
+		private Entry(int tag, Class<?> type, ValueCodec<?> codec) {
+			this.tag = tag;
+			this.type = type;
+			this.codec = codec;
+		}
+	}
+
+	/**
+	 * The entries, by type, in order of registration.
+	 */
+	private final Map<Class<?>, Entry> byType = new LinkedHashMap<Class<?>, Entry>();
+
+	/**
+	 * The entries, by tag.
+	 */
+	private final Map<Integer, Entry> byTag = new HashMap<Integer, Entry>();
+
+	/**
+	 * Creates a codec with the built-in value encoders.
+	 */
+	public PropertySetCodec() {
+		super();
+		put(TAG_BOOLEAN, Boolean.class, new ValueCodec<Boolean>() {
+			@Override
+			public void write(Boolean value, DataOutput out) throws IOException {
+				out.writeBoolean(value);
+			}
+
+			@Override
+			public Boolean read(DataInput in) throws IOException {
+				return in.readBoolean();
+			}
+		});
+		put(TAG_INT, Integer.class, new ValueCodec<Integer>() {
+			@Override
+			public void write(Integer value, DataOutput out) throws IOException {
+				out.writeInt(value);
+			}
+
+			@Override
+			public Integer read(DataInput in) throws IOException {
+				return in.readInt();
+			}
+		});
+		put(TAG_LONG, Long.class, new ValueCodec<Long>() {
+			@Override
+			public void write(Long value, DataOutput out) throws IOException {
+				out.writeLong(value);
+			}
+
+			@Override
+			public Long read(DataInput in) throws IOException {
+				return in.readLong();
+			}
+		});
+		put(TAG_DOUBLE, Double.class, new ValueCodec<Double>() {
+			@Override
+			public void write(Double value, DataOutput out) throws IOException {
+				out.writeDouble(value);
+			}
+
+			@Override
+			public Double read(DataInput in) throws IOException {
+				return in.readDouble();
+			}
+		});
+		put(TAG_STRING, String.class, new ValueCodec<String>() {
+			@Override
+			public void write(String value, DataOutput out) throws IOException {
+				writeString(value, out);
+			}
+
+			@Override
+			public String read(DataInput in) throws IOException {
+				return readString(in);
+			}
+		});
+		put(TAG_TIME, Time.class, new ValueCodec<Time>() {
+			@Override
+			public void write(Time value, DataOutput out) throws IOException {
+				out.writeInt(value.hours);
+				out.writeInt(value.minutes);
+				out.writeInt(value.seconds);
+			}
+
+			@Override
+			public Time read(DataInput in) throws IOException {
+				return new Time(in.readInt(), in.readInt(), in.readInt());
+			}
+		});
+		put(TAG_COLOR, Color.class, new ValueCodec<Color>() {
+			@Override
+			public void write(Color value, DataOutput out) throws IOException {
+				out.writeInt(value.getRGB());
+			}
+
+			@Override
+			public Color read(DataInput in) throws IOException {
+				return new Color(in.readInt(), true);
+			}
+		});
+		put(TAG_FILE, File.class, new ValueCodec<File>() {
+			@Override
+			public void write(File value, DataOutput out) throws IOException {
+				writeString(value.getPath(), out);
+			}
+
+			@Override
+			public File read(DataInput in) throws IOException {
+				return new File(readString(in));
+			}
+		});
+	}
+
+	/**
+	 * Registers a codec for values of the given type. Values whose class is a
+	 * subclass of {@code type} are also written with this codec, unless a
+	 * codec for a more specific class has been registered.
+	 * 
+	 * @param tag
+	 *            the tag identifying the type in the stream, between
+	 *            {@link #FIRST_USER_TAG} and {@code 255}; it must not change
+	 *            once data has been written with it
+	 * @param type
+	 *            the type of value
+	 * @param codec
+	 *            the codec
+	 * @throws IllegalArgumentException
+	 *             if the tag is out of range or already in use
+	 */
+	public <T> void register(int tag, Class<T> type, ValueCodec<T> codec)
+			throws IllegalArgumentException {
+		if (tag < FIRST_USER_TAG || tag > MAX_TAG) {
+			throw new IllegalArgumentException("tag out of range: " + tag); //$NON-NLS-1$
+		}
+		if (byTag.containsKey(tag)) {
+			throw new IllegalArgumentException("tag in use: " + tag); //$NON-NLS-1$
+		}
+		put(tag, type, codec);
+	}
+
+	/**
+	 * Adds an entry without checking the tag.
+	 * 
+	 * @param tag
+	 *            the tag
+	 * @param type
+	 *            the type
+	 * @param codec
+	 *            the codec
+	 */
+	private <T> void put(int tag, Class<T> type, ValueCodec<T> codec) {
+		Entry entry = new Entry(tag, type, codec);
+		byType.put(type, entry);
+		byTag.put(tag, entry);
+	}
+
+	/**
+	 * Writes the values of the given properties to the given channel. The
+	 * channel is not closed. {@code null} elements, and properties whose value
+	 * has no codec, are skipped.
+	 * 
+	 * @param properties
+	 *            the properties to write
+	 * @param channel
+	 *            the channel to write to
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public void write(Collection<? extends AbstractProperty<?>> properties,
+			WritableByteChannel channel) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				Channels.newOutputStream(channel)));
+		writeHeader(out);
+		RecordBuffer buffer = new RecordBuffer();
+		for (AbstractProperty<?> property : properties) {
+			if (property != null) {
+				writeRecord(property, out, buffer);
+			}
+		}
+		out.writeInt(END_OF_RECORDS);
+		out.flush();
+	}
+
+	/**
+	 * Writes previously captured values of the given properties to the given
+	 * channel, so that the values can be taken quickly on one thread and
+	 * encoded on another. The channel is not closed.
+	 * 
+	 * @param properties
+	 *            the properties, which supply the names
+	 * @param values
+	 *            the value of each property, in the same order
+	 * @param channel
+	 *            the channel to write to
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	void write(List<? extends AbstractProperty<?>> properties, List<?> values,
+			WritableByteChannel channel) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				Channels.newOutputStream(channel)));
+		writeHeader(out);
+		RecordBuffer buffer = new RecordBuffer();
+		for (int i = 0; i < properties.size(); i++) {
+			AbstractProperty<?> property = properties.get(i);
+			if (property != null) {
+				writeRecord(property, values.get(i), out, buffer);
+			}
+		}
+		out.writeInt(END_OF_RECORDS);
+		out.flush();
+	}
+
+	/**
+	 * Writes the values of the given properties to the given file, replacing
+	 * its contents.
+	 * 
+	 * @param properties
+	 *            the properties to write
+	 * @param file
+	 *            the file to write to
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public void write(Collection<? extends AbstractProperty<?>> properties,
+			File file) throws IOException {
+		FileOutputStream fos = new FileOutputStream(file);
+		try {
+			write(properties, fos.getChannel());
+		} finally {
+			fos.close();
+		}
+	}
+
+	/**
+	 * Reads values from the given channel into the properties with matching
+	 * names. If {@code properties} is a {@link PropertySet}, the values are
+	 * applied in a {@linkplain PropertySet#beginBatch() batch}. The channel is
+	 * not closed.
+	 * 
+	 * @param properties
+	 *            the properties to read into
+	 * @param channel
+	 *            the channel to read from
+	 * @return the number of values applied
+	 * @throws IOException
+	 *             if an I/O error occurs or the stream is not in this format
+	 */
+	public int read(Collection<? extends AbstractProperty<?>> properties,
+			ReadableByteChannel channel) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				Channels.newInputStream(channel)));
+		readHeader(in);
+		Map<String, AbstractProperty<?>> targets = byName(properties);
+		PropertySet batch = properties instanceof PropertySet ? (PropertySet) properties
+				: null;
+		if (batch != null) {
+			batch.beginBatch();
+		}
+		try {
+			int applied = 0;
+			int result;
+			while ((result = readRecord(in, targets)) != RECORD_END) {
+				if (result == RECORD_APPLIED) {
+					applied++;
+				}
+			}
+			return applied;
+		} finally {
+			if (batch != null) {
+				batch.endBatch();
+			}
+		}
+	}
+
+	/**
+	 * Reads values from the given file into the properties with matching
+	 * names.
+	 * 
+	 * @param properties
+	 *            the properties to read into
+	 * @param file
+	 *            the file to read from
+	 * @return the number of values applied
+	 * @throws IOException
+	 *             if an I/O error occurs or the file is not in this format
+	 * @see #read(Collection, ReadableByteChannel)
+	 */
+	public int read(Collection<? extends AbstractProperty<?>> properties,
+			File file) throws IOException {
+		FileInputStream fis = new FileInputStream(file);
+		try {
+			FileChannel channel = fis.getChannel();
+			return read(properties, channel);
+		} finally {
+			fis.close();
+		}
+	}
+
+	/**
+	 * Indexes the given properties by name. If several share a name, the
+	 * first is used.
+	 * 
+	 * @param properties
+	 *            the properties
+	 * @return a map from name to property
+	 */
+	static Map<String, AbstractProperty<?>> byName(
+			Collection<? extends AbstractProperty<?>> properties) {
+		Map<String, AbstractProperty<?>> map = new HashMap<String, AbstractProperty<?>>();
+		for (AbstractProperty<?> property : properties) {
+			if (property != null && property.getName() != null
+					&& !map.containsKey(property.getName())) {
+				map.put(property.getName(), property);
+			}
+		}
+		return map;
+	}
+
+	/**
+	 * Writes the stream header.
+	 * 
+	 * @param out
+	 *            the output
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	static void writeHeader(DataOutput out) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeShort(VERSION);
+	}
+
+	/**
+	 * Reads and checks the stream header.
+	 * 
+	 * @param in
+	 *            the input
+	 * @throws IOException
+	 *             if an I/O error occurs, the stream is not in this format, or
+	 *             it was written by a newer version
+	 */
+	static void readHeader(DataInput in) throws IOException {
+		if (in.readInt() != MAGIC) {
+			throw new IOException("not a property stream"); //$NON-NLS-1$
+		}
+		int version = in.readUnsignedShort();
+		if (version > VERSION) {
+			throw new IOException("unsupported version: " + version); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * A reusable buffer for encoding the value of a record before its length
+	 * is known.
+	 * 
+	 * @author William Chargin
+	 * 
+	 */
+	static final class RecordBuffer extends ByteArrayOutputStream {
+
+		/**
+		 * A data output writing to this buffer.
+		 */
+		final DataOutputStream data = new DataOutputStream(this);
+
+		/**
+		 * Writes the contents of this buffer, preceded by their length.
+		 * 
+		 * @param out
+		 *            the output
+		 * @throws IOException
+		 *             if an I/O error occurs
+		 */
+		void writeTo(DataOutput out) throws IOException {
+			out.writeInt(count);
+			out.write(buf, 0, count);
+		}
+	}
+
+	/**
+	 * Writes one record for the given property.
+	 * 
+	 * @param property
+	 *            the property
+	 * @param out
+	 *            the output
+	 * @param buffer
+	 *            a buffer for the encoded value
+	 * @return {@code true} if a record was written, or {@code false} if the
+	 *         value has no codec
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	boolean writeRecord(AbstractProperty<?> property, DataOutput out,
+			RecordBuffer buffer) throws IOException {
+		return writeRecord(property, property.getValue(), out, buffer);
+	}
+
+	/**
+	 * Writes one record for the given property, with the given value.
+	 * 
+	 * @param property
+	 *            the property
+	 * @param value
+	 *            the value to write
+	 * @param out
+	 *            the output
+	 * @param buffer
+	 *            a buffer for the encoded value
+	 * @return {@code true} if a record was written, or {@code false} if the
+	 *         value has no codec
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private boolean writeRecord(AbstractProperty<?> property, Object value,
+			DataOutput out, RecordBuffer buffer) throws IOException {
+		buffer.reset();
+		int tag = encode(property, value, buffer.data);
+		if (tag < 0) {
+			return false;
+		}
+		writeString(property.getName() == null ? new String() : property
+				.getName(), out);
+		out.writeByte(tag);
+		buffer.writeTo(out);
+		return true;
+	}
+
+	/**
+	 * Encodes a value of the given property.
+	 * 
+	 * @param property
+	 *            the property
+	 * @param value
+	 *            the value
+	 * @param out
+	 *            the output for the encoded value
+	 * @return the tag of the value, or {@code -1} if it has no codec
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	@SuppressWarnings("unchecked")
+	private int encode(AbstractProperty<?> property, Object value,
+			DataOutput out) throws IOException {
+		if (value == null) {
+			return TAG_NULL;
+		}
+		if (property instanceof MultipleChoiceProperty) {
+			List<?> values = ((MultipleChoiceProperty<?>) property).getValues();
+			writeString(choiceKey(value), out);
+			out.writeInt(values.indexOf(value));
+			return TAG_CHOICE;
+		}
+		if (value instanceof Enum) {
+			writeString(((Enum<?>) value).name(), out);
+			return TAG_ENUM;
+		}
+		Entry entry = entryFor(value.getClass());
+		if (entry == null) {
+			return -1;
+		}
+		((ValueCodec<Object>) entry.codec).write(value, out);
+		return entry.tag;
+	}
+
+	/**
+	 * Gets the entry for values of the given class.
+	 * 
+	 * @param type
+	 *            the class
+	 * @return the entry for the class or its nearest registered superclass,
+	 *         or {@code null} if there is none
+	 */
+	private Entry entryFor(Class<?> type) {
+		Entry entry = byType.get(type);
+		if (entry == null) {
+			for (Entry candidate : byType.values()) {
+				if (candidate.type.isAssignableFrom(type)
+						&& (entry == null || entry.type
+								.isAssignableFrom(candidate.type))) {
+					entry = candidate;
+				}
+			}
+		}
+		return entry;
+	}
+
+	/**
+	 * Reads one record and applies it to the property with the matching name.
+	 * 
+	 * @param in
+	 *            the input
+	 * @param targets
+	 *            the properties, by name
+	 * @return {@link #RECORD_APPLIED}, {@link #RECORD_SKIPPED}, or
+	 *         {@link #RECORD_END}
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	int readRecord(DataInput in, Map<String, AbstractProperty<?>> targets)
+			throws IOException {
+		int nameLength = in.readInt();
+		if (nameLength == END_OF_RECORDS) {
+			return RECORD_END;
+		}
+		String name = readString(nameLength, in);
+		int tag = in.readUnsignedByte();
+		byte[] payload = readBytes(in.readInt(), in);
+		AbstractProperty<?> property = targets.get(name);
+		if (property == null) {
+			return RECORD_SKIPPED;
+		}
+		DataInputStream value = new DataInputStream(new ByteArrayInputStream(
+				payload));
+		return apply(property, tag, value) ? RECORD_APPLIED : RECORD_SKIPPED;
+	}
+
+	/**
+	 * Decodes a value and sets it on the given property, if the value is
+	 * compatible with the property.
+	 * 
+	 * @param property
+	 *            the property
+	 * @param tag
+	 *            the tag of the value
+	 * @param in
+	 *            the encoded value
+	 * @return {@code true} if the value was applied
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private boolean apply(AbstractProperty<?> property, int tag, DataInput in)
+			throws IOException {
+		Object current = property.getValue();
+		Object value;
+		switch (tag) {
+		case TAG_NULL:
+			if (current != null && !property.isNullable()) {
+				return false;
+			}
+			value = null;
+			break;
+		case TAG_CHOICE:
+			if (!(property instanceof MultipleChoiceProperty)) {
+				return false;
+			}
+			value = findChoice(
+					((MultipleChoiceProperty<?>) property).getValues(),
+					readString(in), in.readInt());
+			if (value == null) {
+				return false;
+			}
+			break;
+		case TAG_ENUM:
+			if (!(current instanceof Enum)) {
+				return false;
+			}
+			try {
+				value = Enum.valueOf(
+						((Enum) current).getDeclaringClass(), readString(in));
+			} catch (IllegalArgumentException iae) {
+				// The constant no longer exists.
+				return false;
+			}
+			break;
+		default:
+			Entry entry = byTag.get(tag);
+			if (entry == null) {
+				return false;
+			}
+			Class<?> type = valueType(property.getClass());
+			if (type == Void.class) {
+				// The type argument is not known; match the current value.
+				type = current == null ? Void.class : current.getClass();
+			}
+			if (!type.isAssignableFrom(entry.type)) {
+				// The property's value is of a different type than was stored.
+				return false;
+			}
+			value = entry.codec.read(in);
+			if (!type.isInstance(value)
+					|| (property instanceof DoubleProperty && ((Double) value)
+							.isNaN())) {
+				return false;
+			}
+			break;
+		}
+		((AbstractProperty<Object>) property).setValue(value);
+		return true;
+	}
+
+	/**
+	 * Finds the value type of the given property class, by resolving the type
+	 * argument of {@link AbstractProperty} through its superclasses. This is
+	 * used to check stored values when a property has no current value to
+	 * compare against.
+	 * 
+	 * @param type
+	 *            the property class
+	 * @return the value type, or {@code Void} if it cannot be determined, so
+	 *         that no stored value matches
+	 */
+	static Class<?> valueType(Class<?> type) {
+		Map<TypeVariable<?>, Type> bindings = new HashMap<TypeVariable<?>, Type>();
+		for (Class<?> c = type; c != null && c != AbstractProperty.class; c = c
+				.getSuperclass()) {
+			Type superclass = c.getGenericSuperclass();
+			if (!(superclass instanceof ParameterizedType)) {
+				continue;
+			}
+			ParameterizedType pt = (ParameterizedType) superclass;
+			TypeVariable<?>[] variables = ((Class<?>) pt.getRawType())
+					.getTypeParameters();
+			Type[] arguments = pt.getActualTypeArguments();
+			for (int i = 0; i < variables.length; i++) {
+				Type argument = arguments[i];
+				if (bindings.containsKey(argument)) {
+					argument = bindings.get(argument);
+				}
+				bindings.put(variables[i], argument);
+			}
+		}
+		Type value = bindings.get(AbstractProperty.class.getTypeParameters()[0]);
+		if (value instanceof ParameterizedType) {
+			value = ((ParameterizedType) value).getRawType();
+		}
+		return value instanceof Class ? (Class<?>) value : Void.class;
+	}
+
+	/**
+	 * Gets the key under which a choice is stored.
+	 * 
+	 * @param choice
+	 *            the choice
+	 * @return the enum constant name, or the string form, of the choice
+	 */
+	private static String choiceKey(Object choice) {
+		return choice instanceof Enum ? ((Enum<?>) choice).name() : String
+				.valueOf(choice);
+	}
+
+	/**
+	 * Finds a stored choice among the given possibilities, by key or, failing
+	 * that, by index.
+	 * 
+	 * @param values
+	 *            the possible values
+	 * @param key
+	 *            the stored key
+	 * @param index
+	 *            the stored index
+	 * @return the matching value, or {@code null} if there is none
+	 */
+	private static Object findChoice(List<?> values, String key, int index) {
+		if (index >= 0 && index < values.size()
+				&& key.equals(choiceKey(values.get(index)))) {
+			return values.get(index);
+		}
+		for (Object value : values) {
+			if (key.equals(choiceKey(value))) {
+				return value;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Writes a string as its length in UTF-8 bytes followed by the bytes.
+	 * Unlike {@link DataOutput#writeUTF(String)}, this has no length limit.
+	 * 
+	 * @param s
+	 *            the string
+	 * @param out
+	 *            the output
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	static void writeString(String s, DataOutput out) throws IOException {
+		byte[] bytes = s.getBytes(UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Reads a string written by {@link #writeString(String, DataOutput)}.
+	 * 
+	 * @param in
+	 *            the input
+	 * @return the string
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	static String readString(DataInput in) throws IOException {
+		return readString(in.readInt(), in);
+	}
+
+	/**
+	 * Reads the bytes of a string whose length has already been read.
+	 * 
+	 * @param length
+	 *            the length in bytes
+	 * @param in
+	 *            the input
+	 * @return the string
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private static String readString(int length, DataInput in)
+			throws IOException {
+		return new String(readBytes(length, in), UTF_8);
+	}
+
+	/**
+	 * Reads a run of bytes whose length has already been read. Memory is
+	 * allocated as the bytes arrive, so a length longer than the stream ends
+	 * in an {@link java.io.EOFException} rather than a huge allocation.
+	 * 
+	 * @param length
+	 *            the length in bytes
+	 * @param in
+	 *            the input
+	 * @return the bytes
+	 * @throws IOException
+	 *             if the length is negative or too large, or an I/O error
+	 *             occurs
+	 */
+	private static byte[] readBytes(int length, DataInput in)
+			throws IOException {
+		if (length < 0 || length > MAX_LENGTH) {
+			throw new IOException("invalid length: " + length); //$NON-NLS-1$
+		}
+		byte[] bytes = new byte[Math.min(length, READ_CHUNK)];
+		int read = 0;
+		while (true) {
+			in.readFully(bytes, read, bytes.length - read);
+			read = bytes.length;
+			if (read == length) {
+				return bytes;
+			}
+			bytes = Arrays.copyOf(bytes, (int) Math.min(length, 2L * read));
+		}
+	}
+}
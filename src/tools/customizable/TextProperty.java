@@ -2,8 +2,6 @@ package tools.customizable;
 
 import javax.swing.JLabel;
 import javax.swing.JTextField;
-import javax.swing.event.DocumentEvent;
-import javax.swing.event.DocumentListener;
 
 /**
  * A property for a short amount of text (e.g., a first name or street address).
@@ -11,8 +9,7 @@ import javax.swing.event.DocumentListener;
  * @author William Chargin
  * 
  */
-public class TextProperty extends
-		AbstractSwingProperty<String, JTextField, JLabel> {
+public class TextProperty extends AbstractTextProperty<JTextField, JLabel> {
 
 	/**
 	 * Creates the property with an empty name and value.
@@ -40,23 +37,8 @@ public class TextProperty extends
 
 	@Override
 	protected JTextField createEditor() {
-		final JTextField txt = new JTextField(20);
-		txt.getDocument().addDocumentListener(new DocumentListener() {
-			@Override
-			public void removeUpdate(DocumentEvent de) {
-				setValue(txt.getText());
-			}
-
-			@Override
-			public void insertUpdate(DocumentEvent de) {
-				setValue(txt.getText());
-			}
-
-			@Override
-			public void changedUpdate(DocumentEvent de) {
-				setValue(txt.getText());
-			}
-		});
+		JTextField txt = new JTextField(getDocument(), null, 20);
+		addCommitTriggers(txt);
 		return txt;
 	}
 
@@ -67,22 +49,8 @@ public class TextProperty extends
 
 	@Override
 	protected void updateEditor(JTextField editor) {
-		// We don't want any concurrent modification errors, so we'll check to
-		// see if this editor's text is the same as the desired text before
-		// updating.
-		// ... but try-catch just in case.
-		try {
-			if (editor.getText().equals(getValue())) {
-				// This is the editor whose text was modified.
-				// Do nothing.
-			} else {
-				editor.setText(getValue());
-			}
-			editor.setEnabled(isEnabled());
-		} catch (IllegalStateException ise) {
-			// Do nothing.
-			// That's weird, though.
-		}
+		// The text is shared through the document.
+		editor.setEnabled(isEnabled());
 	}
 
 	@Override
@@ -90,9 +58,4 @@ public class TextProperty extends
 		viewer.setText(getValue());
 	}
 
-	@Override
-	public void setValue(String value) {
-		super.setValue(value == null ? new String() : value);
-	}
-
 }
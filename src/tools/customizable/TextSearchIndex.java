@@ -0,0 +1,493 @@
+package tools.customizable;
+
+import java.util.Arrays;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.Segment;
+
+/**
+ * An index for case-insensitive searching of a {@link Document}. The index
+ * keeps a posting list for each trigram (three consecutive characters, hashed
+ * into one of {@value #BUCKETS} buckets) that holds the lines containing it. A
+ * query is only compared against the lines that appear in the posting list of
+ * every one of its trigrams, so lines without the query are skipped without
+ * being read. Queries shorter than three characters are compared against
+ * every line.
+ * <p>
+ * Each line has an id, and the posting lists hold ids rather than line
+ * numbers, so that inserting or removing a line only renumbers the lines
+ * after it. When a line changes it is given a new id, and the postings of its
+ * old id are discarded once they outnumber the live postings by rebuilding
+ * the index. The index takes about four bytes for each character of the
+ * document.
+ * <p>
+ * The index follows the document's events, reindexing only the lines that
+ * changed. Like the document's events, it must be used on the event dispatch
+ * thread (or whichever thread modifies the document).
+ * 
+ * @author William Chargin
+ * 
+ */
+public class TextSearchIndex implements DocumentListener {
+
+	/**
+	 * The number of posting lists, which is a power of two.
+	 */
+	private static final int BUCKETS = 1 << 16;
+
+	/**
+	 * The number of discarded postings that are always kept, so that small
+	 * documents are not rebuilt on every change.
+	 */
+	private static final int MIN_DEAD = 1 << 16;
+
+	/**
+	 * The indexed document.
+	 */
+	private final Document document;
+
+	/**
+	 * The id of each line. Only the first {@link #lines} entries are used.
+	 */
+	private int[] ids;
+
+	/**
+	 * The number of lines.
+	 */
+	private int lines;
+
+	/**
+	 * The line number of each id, or {@code -1} if the id has been discarded.
+	 * Only the first {@link #nextId} entries are used.
+	 */
+	private int[] positions;
+
+	/**
+	 * The number of postings of each id.
+	 */
+	private int[] counts;
+
+	/**
+	 * The id given to the next line indexed.
+	 */
+	private int nextId;
+
+	/**
+	 * The posting lists, holding the ids of the lines that contain each
+	 * trigram in increasing order. A list is {@code null} until it is used.
+	 */
+	private int[][] postings;
+
+	/**
+	 * The number of ids in each posting list.
+	 */
+	private int[] sizes;
+
+	/**
+	 * The number of postings, including those of discarded ids.
+	 */
+	private long postingCount;
+
+	/**
+	 * The number of postings of discarded ids.
+	 */
+	private long deadCount;
+
+	/**
+	 * The number of lines whose text was compared against the query by the
+	 * last search. This is used by tests to check that lines are skipped.
+	 */
+	int scanned;
+
+	/**
+	 * A segment reused to read lines.
+	 */
+	private final Segment segment = new Segment();
+
+	/**
+	 * Creates the index for the given document, and indexes every line. The
+	 * index listens to the document until it is {@linkplain #dispose()
+	 * disposed}.
+	 * 
+	 * @param document
+	 *            the document to index
+	 */
+	public TextSearchIndex(Document document) {
+		super();
+		this.document = document;
+		rebuild();
+		document.addDocumentListener(this);
+	}
+
+	/**
+	 * Gets the indexed document.
+	 * 
+	 * @return the document
+	 */
+	public Document getDocument() {
+		return document;
+	}
+
+	/**
+	 * Stops following the document. The index must not be used afterward.
+	 */
+	public void dispose() {
+		document.removeDocumentListener(this);
+	}
+
+	/**
+	 * Finds the first occurrence of the given text, ignoring case, that starts
+	 * at or after {@code from} and before {@code to}. Matches do not span
+	 * lines.
+	 * 
+	 * @param query
+	 *            the text to find
+	 * @param from
+	 *            the first offset at which a match may start
+	 * @param to
+	 *            the offset before which a match must start
+	 * @return the offset of the match, or {@code -1} if there is none
+	 */
+	public int find(String query, int from, int to) {
+		scanned = 0;
+		from = Math.max(from, 0);
+		to = Math.min(to, document.getLength());
+		if (query.length() == 0 || from >= to) {
+			return -1;
+		}
+		Element root = document.getDefaultRootElement();
+		int firstLine = root.getElementIndex(from);
+		int lastLine = Math.min(root.getElementIndex(to - 1), lines - 1);
+		int[] keys = keys(query);
+		int driver = -1;
+		for (int i = 0; i < keys.length; i++) {
+			int size = sizes[keys[i]];
+			if (size == 0) {
+				return -1;
+			}
+			if (driver < 0 || size < sizes[keys[driver]]) {
+				driver = i;
+			}
+		}
+		if (driver >= 0 && sizes[keys[driver]] <= lastLine - firstLine) {
+			// Fewer lines contain the rarest trigram than are in the range.
+			int[] list = postings[keys[driver]];
+			int[] candidates = new int[sizes[keys[driver]]];
+			int count = 0;
+			for (int i = 0; i < candidates.length; i++) {
+				int line = positions[list[i]];
+				if (line >= firstLine && line <= lastLine
+						&& contains(list[i], keys)) {
+					candidates[count++] = line;
+				}
+			}
+			Arrays.sort(candidates, 0, count);
+			for (int i = 0; i < count; i++) {
+				int at = search(root.getElement(candidates[i]), query, from,
+						to);
+				if (at >= 0) {
+					return at;
+				}
+			}
+		} else {
+			for (int i = firstLine; i <= lastLine; i++) {
+				if (contains(ids[i], keys)) {
+					int at = search(root.getElement(i), query, from, to);
+					if (at >= 0) {
+						return at;
+					}
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Finds the first occurrence of the query within the given line.
+	 * 
+	 * @param line
+	 *            the line element
+	 * @param query
+	 *            the text to find
+	 * @param from
+	 *            the first offset at which a match may start
+	 * @param to
+	 *            the offset before which a match must start
+	 * @return the offset of the match, or {@code -1} if there is none
+	 */
+	private int search(Element line, String query, int from, int to) {
+		int length = query.length();
+		int start = line.getStartOffset();
+		int end = Math.min(line.getEndOffset(), document.getLength());
+		if (end - start < length) {
+			return -1;
+		}
+		scanned++;
+		read(start, end);
+		int first = Math.max(from - start, 0);
+		int last = Math.min(to - start, end - start - length + 1);
+		for (int j = first; j < last; j++) {
+			if (matches(segment, j, query)) {
+				return start + j;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Determines whether the line with the given id contains every given
+	 * trigram.
+	 * 
+	 * @param id
+	 *            the id of the line
+	 * @param keys
+	 *            the buckets of the trigrams
+	 * @return {@code true} if each posting list contains the id
+	 */
+	private boolean contains(int id, int[] keys) {
+		for (int i = 0; i < keys.length; i++) {
+			if (Arrays.binarySearch(postings[keys[i]], 0, sizes[keys[i]], id) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void insertUpdate(DocumentEvent de) {
+		update(de);
+	}
+
+	@Override
+	public void removeUpdate(DocumentEvent de) {
+		update(de);
+	}
+
+	@Override
+	public void changedUpdate(DocumentEvent de) {
+		// Attributes only; the text is unchanged.
+	}
+
+	/**
+	 * Reindexes the lines affected by the given event.
+	 * 
+	 * @param de
+	 *            the event
+	 */
+	private void update(DocumentEvent de) {
+		Element root = document.getDefaultRootElement();
+		DocumentEvent.ElementChange change = de.getChange(root);
+		if (change == null) {
+			// The event stayed within one line.
+			int line = root.getElementIndex(de.getOffset());
+			discard(line);
+			index(root.getElement(line), line);
+		} else {
+			int first = change.getIndex();
+			int removed = change.getChildrenRemoved().length;
+			int added = change.getChildrenAdded().length;
+			for (int i = first; i < first + removed; i++) {
+				discard(i);
+			}
+			splice(first, removed, added);
+			for (int i = first; i < first + added; i++) {
+				index(root.getElement(i), i);
+			}
+			if (removed != added) {
+				for (int i = first + added; i < lines; i++) {
+					positions[ids[i]] = i;
+				}
+			}
+		}
+		if (deadCount > postingCount - deadCount + MIN_DEAD) {
+			rebuild();
+		}
+	}
+
+	/**
+	 * Discards the postings of every line, and indexes each line afresh.
+	 */
+	private void rebuild() {
+		Element root = document.getDefaultRootElement();
+		lines = root.getElementCount();
+		ids = new int[Math.max(16, lines)];
+		positions = new int[ids.length];
+		counts = new int[ids.length];
+		nextId = 0;
+		postings = new int[BUCKETS][];
+		sizes = new int[BUCKETS];
+		postingCount = 0;
+		deadCount = 0;
+		for (int i = 0; i < lines; i++) {
+			index(root.getElement(i), i);
+		}
+	}
+
+	/**
+	 * Replaces a run of line ids with room for a different number of lines.
+	 * 
+	 * @param index
+	 *            the index of the first line replaced
+	 * @param removed
+	 *            the number of lines removed
+	 * @param added
+	 *            the number of lines added
+	 */
+	private void splice(int index, int removed, int added) {
+		int newLines = lines - removed + added;
+		if (newLines > ids.length) {
+			int[] grown = new int[Math.max(newLines, ids.length * 2)];
+			System.arraycopy(ids, 0, grown, 0, index);
+			System.arraycopy(ids, index + removed, grown, index + added, lines
+					- index - removed);
+			ids = grown;
+		} else {
+			System.arraycopy(ids, index + removed, ids, index + added, lines
+					- index - removed);
+		}
+		lines = newLines;
+	}
+
+	/**
+	 * Discards the id of the given line, so that its postings are ignored.
+	 * 
+	 * @param line
+	 *            the line number
+	 */
+	private void discard(int line) {
+		int id = ids[line];
+		positions[id] = -1;
+		deadCount += counts[id];
+	}
+
+	/**
+	 * Gives the given line a new id, and adds the id to the posting list of
+	 * each of the line's trigrams.
+	 * 
+	 * @param line
+	 *            the line element
+	 * @param number
+	 *            the line number
+	 */
+	private void index(Element line, int number) {
+		if (nextId == positions.length) {
+			positions = Arrays.copyOf(positions, nextId * 2);
+			counts = Arrays.copyOf(counts, nextId * 2);
+		}
+		int id = nextId++;
+		ids[number] = id;
+		positions[id] = number;
+		int count = 0;
+		int start = line.getStartOffset();
+		int end = Math.min(line.getEndOffset(), document.getLength());
+		if (end - start >= 3) {
+			read(start, end);
+			int a = Character.toLowerCase(segment.charAt(0));
+			int b = Character.toLowerCase(segment.charAt(1));
+			for (int i = 2; i < segment.count; i++) {
+				int c = Character.toLowerCase(segment.charAt(i));
+				int key = key(a, b, c);
+				int size = sizes[key];
+				int[] list = postings[key];
+				if (size == 0 || list[size - 1] != id) {
+					if (list == null) {
+						list = postings[key] = new int[4];
+					} else if (size == list.length) {
+						list = postings[key] = Arrays.copyOf(list, size * 2);
+					}
+					list[size] = id;
+					sizes[key] = size + 1;
+					count++;
+				}
+				a = b;
+				b = c;
+			}
+		}
+		counts[id] = count;
+		postingCount += count;
+	}
+
+	/**
+	 * Reads the given range of the document into the segment.
+	 * 
+	 * @param start
+	 *            the offset of the first character
+	 * @param end
+	 *            the offset after the last character
+	 */
+	private void read(int start, int end) {
+		try {
+			document.getText(start, end - start, segment);
+		} catch (BadLocationException ble) {
+			throw new IllegalStateException(ble);
+		}
+	}
+
+	/**
+	 * Computes the buckets of the trigrams of the given query.
+	 * 
+	 * @param query
+	 *            the query
+	 * @return the bucket of each trigram, which is empty if the query is
+	 *         shorter than three characters
+	 */
+	private static int[] keys(String query) {
+		int length = query.length();
+		if (length < 3) {
+			return new int[0];
+		}
+		int[] keys = new int[length - 2];
+		int a = Character.toLowerCase(query.charAt(0));
+		int b = Character.toLowerCase(query.charAt(1));
+		for (int i = 2; i < length; i++) {
+			int c = Character.toLowerCase(query.charAt(i));
+			keys[i - 2] = key(a, b, c);
+			a = b;
+			b = c;
+		}
+		return keys;
+	}
+
+	/**
+	 * Computes the bucket of the given trigram.
+	 * 
+	 * @param a
+	 *            the first character, in lower case
+	 * @param b
+	 *            the second character, in lower case
+	 * @param c
+	 *            the third character, in lower case
+	 * @return the bucket
+	 */
+	private static int key(int a, int b, int c) {
+		return (((a * 31 + b) * 31 + c) * 0x9E3779B9) >>> 16;
+	}
+
+	/**
+	 * Determines whether the query occurs, ignoring case, at the given offset
+	 * of the text.
+	 * 
+	 * @param text
+	 *            the text
+	 * @param offset
+	 *            the offset within the text
+	 * @param query
+	 *            the query
+	 * @return {@code true} if the query occurs at the offset
+	 */
+	private static boolean matches(CharSequence text, int offset, String query) {
+		for (int i = 0; i < query.length(); i++) {
+			char c = text.charAt(offset + i);
+			char q = query.charAt(i);
+			if (c != q
+					&& Character.toLowerCase(c) != Character.toLowerCase(q)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,193 @@
+package tools.customizable;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * Coalesces the refreshing of the editors and viewers of properties onto the
+ * event dispatch thread. A property that changes many times before it is
+ * refreshed is refreshed once, with its latest value, and all pending
+ * properties are refreshed together.
+ * <p>
+ * By default, only changes made off the event dispatch thread are deferred,
+ * and they are refreshed as soon as the event dispatch thread is free. With a
+ * {@linkplain #setFrameRate(int) frame rate}, changes made on the event
+ * dispatch thread are deferred as well, and refreshes happen at most that many
+ * times per second. This keeps the event dispatch thread responsive when many
+ * properties change faster than anyone can see. (Change listeners are still
+ * notified of changes made on the event dispatch thread immediately.)
+ * 
+ * @author William Chargin
+ * 
+ */
+public final class UpdateScheduler {
+
+	/**
+	 * The properties waiting to be refreshed, each mapped to whether its change
+	 * listeners must also be notified.
+	 */
+	private static final Map<AbstractSwingProperty<?, ?, ?>, Boolean> pending = new ConcurrentHashMap<AbstractSwingProperty<?, ?, ?>, Boolean>();
+
+	/**
+	 * Whether a drain has been posted and has not yet started.
+	 */
+	private static final AtomicBoolean drainPosted = new AtomicBoolean();
+
+	/**
+	 * The maximum number of refreshes per second, or {@code 0} for no limit.
+	 */
+	private static volatile int frameRate;
+
+	/**
+	 * The value of {@link System#nanoTime()} when the last drain started.
+	 */
+	private static volatile long lastDrain;
+
+	/**
+	 * The event that refreshes the pending properties.
+	 */
+	private static final Runnable drain = new Runnable() {
+		@Override
+		public void run() {
+			drainPosted.set(false);
+			lastDrain = System.nanoTime();
+			drainPending();
+		}
+	};
+
+	/**
+	 * The timer action that runs {@link #drain}.
+	 */
+	private static final ActionListener drainAction = new ActionListener() {
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			drain.run();
+		}
+	};
+
+	/**
+	 * This class is not instantiable.
+	 */
+	private UpdateScheduler() {
+		super();
+	}
+
+	/**
+	 * Gets the maximum number of times per second that editors and viewers
+	 * are refreshed.
+	 * 
+	 * @return the frame rate, or {@code 0} if refreshes are not limited
+	 */
+	public static int getFrameRate() {
+		return frameRate;
+	}
+
+	/**
+	 * Sets the maximum number of times per second that editors and viewers
+	 * are refreshed. Typical values are {@code 30} or {@code 60}.
+	 * 
+	 * @param frameRate
+	 *            the frame rate, or {@code 0} to refresh changes made on the
+	 *            event dispatch thread immediately and others as soon as
+	 *            possible
+	 * @throws IllegalArgumentException
+	 *             if the frame rate is negative
+	 */
+	public static void setFrameRate(int frameRate)
+			throws IllegalArgumentException {
+		if (frameRate < 0) {
+			throw new IllegalArgumentException("negative frame rate"); //$NON-NLS-1$
+		}
+		UpdateScheduler.frameRate = frameRate;
+	}
+
+	/**
+	 * Refreshes all pending properties now. This must be called on the event
+	 * dispatch thread.
+	 */
+	public static void flush() {
+		drainPending();
+	}
+
+	/**
+	 * Determines whether changes made on the event dispatch thread are
+	 * deferred.
+	 * 
+	 * @return {@code true} if a frame rate is set
+	 */
+	static boolean isThrottled() {
+		return frameRate > 0;
+	}
+
+	/**
+	 * Schedules the editors and viewers of the given property to be refreshed
+	 * on the event dispatch thread.
+	 * 
+	 * @param property
+	 *            the property to refresh
+	 * @param notify
+	 *            whether the change listeners of the property should also be
+	 *            notified
+	 */
+	static void schedule(AbstractSwingProperty<?, ?, ?> property,
+			boolean notify) {
+		boolean added;
+		if (notify) {
+			added = pending.put(property, Boolean.TRUE) == null;
+		} else {
+			// Never downgrade a pending notification.
+			added = pending.putIfAbsent(property, Boolean.FALSE) == null;
+		}
+		if (added && drainPosted.compareAndSet(false, true)) {
+			post();
+		}
+	}
+
+	/**
+	 * Posts {@link #drain}: as soon as possible if no frame rate is set, and
+	 * otherwise no sooner than one frame after the last drain.
+	 */
+	private static void post() {
+		int rate = frameRate;
+		long delay = 0;
+		if (rate > 0) {
+			long frame = TimeUnit.SECONDS.toNanos(1) / rate;
+			delay = TimeUnit.NANOSECONDS.toMillis(Math.min(frame, lastDrain
+					+ frame - System.nanoTime()));
+		}
+		if (delay <= 0) {
+			SwingUtilities.invokeLater(drain);
+		} else {
+			Timer timer = new Timer((int) delay, drainAction);
+			timer.setRepeats(false);
+			timer.start();
+		}
+	}
+
+	/**
+	 * Refreshes the pending properties.
+	 */
+	private static void drainPending() {
+		for (Iterator<AbstractSwingProperty<?, ?, ?>> it = pending.keySet()
+				.iterator(); it.hasNext();) {
+			AbstractSwingProperty<?, ?, ?> property = it.next();
+			Boolean notify = pending.remove(property);
+			if (notify == null) {
+				continue;
+			}
+			if (notify.booleanValue()) {
+				property.refresh();
+			} else {
+				property.refreshComponents();
+			}
+		}
+	}
+}
@@ -0,0 +1,32 @@
+package tools.customizable;
+
+import java.util.EventListener;
+
+/**
+ * A listener notified when the value of a property changes. Unlike a
+ * {@link javax.swing.event.ChangeListener}, it is told both the previous and
+ * the new value, and it is not notified of changes to the name, description,
+ * or other attributes of the property.
+ * 
+ * @author William Chargin
+ * 
+ * @param <T>
+ *            the type of value observed
+ */
+public interface ValueChangeListener<T> extends EventListener {
+
+	/**
+	 * Invoked after the value of a property changes. The old and new values
+	 * are never {@linkplain Object#equals(Object) equal}.
+	 * 
+	 * @param property
+	 *            the property whose value changed
+	 * @param oldValue
+	 *            the previous value
+	 * @param newValue
+	 *            the new (current) value
+	 */
+	public void valueChanged(AbstractProperty<? extends T> property,
+			T oldValue, T newValue);
+
+}
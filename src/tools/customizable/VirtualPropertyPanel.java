@@ -0,0 +1,440 @@
+package tools.customizable;
+
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EventObject;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.AbstractCellEditor;
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JSeparator;
+import javax.swing.JTable;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.TableCellEditor;
+import javax.swing.table.TableCellRenderer;
+
+/**
+ * A property panel for very large sets of properties. Unlike a
+ * {@link PropertyPanel}, which creates components for every property up front,
+ * this panel paints each visible row with a single viewer per property class
+ * (in the manner of a {@link JTable} cell renderer) and creates an editor only
+ * for the row being edited, releasing it when editing stops.
+ * <p>
+ * Rows for properties that are not {@link AbstractSwingProperty Swing
+ * properties} are omitted, and {@code null} elements are displayed as
+ * separators.
+ * 
+ * @author William Chargin
+ * 
+ */
+public class VirtualPropertyPanel extends JPanel {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The index of the name column.
+	 */
+	private static final int NAME_COLUMN = 0;
+
+	/**
+	 * The index of the value column.
+	 */
+	private static final int VALUE_COLUMN = 1;
+
+	/**
+	 * The spacing, in pixels, added around each row and the name column.
+	 */
+	private static final int PADDING = 4;
+
+	/**
+	 * The properties displayed, one per row ({@code null} for a separator).
+	 */
+	private final List<AbstractSwingProperty<?, ?, ?>> rows = new ArrayList<AbstractSwingProperty<?, ?, ?>>();
+
+	/**
+	 * The row of each property. If a property appears in more than one row,
+	 * the last is recorded.
+	 */
+	private final Map<AbstractProperty<?>, Integer> rowIndices = new IdentityHashMap<AbstractProperty<?>, Integer>();
+
+	/**
+	 * The table model.
+	 */
+	private final PropertyTableModel model = new PropertyTableModel();
+
+	/**
+	 * The table displaying the properties.
+	 */
+	private final JTable table;
+
+	/**
+	 * The single listener registered on every property, which repaints the
+	 * property's row. It is registered
+	 * {@linkplain AbstractProperty#addWeakChangeListener(ChangeListener)
+	 * weakly}, so the properties do not keep this panel alive.
+	 */
+	private final ChangeListener repainter = new ChangeListener() {
+		@Override
+		public void stateChanged(ChangeEvent ce) {
+			Integer row = rowIndices.get(ce.getSource());
+			if (row != null) {
+				model.fireTableRowsUpdated(row, row);
+			}
+		}
+	};
+
+	/**
+	 * Whether this panel is in edit mode.
+	 */
+	private boolean editing;
+
+	/**
+	 * Creates the panel with the given parameters.
+	 * 
+	 * @param properties
+	 *            the set of properties
+	 * @param editMode
+	 *            whether this panel is for editing ({@code true}) or viewing (
+	 *            {@code false})
+	 */
+	public VirtualPropertyPanel(
+			Collection<? extends AbstractProperty<?>> properties,
+			boolean editMode) {
+		super(new BorderLayout());
+		editing = editMode;
+		for (AbstractProperty<?> property : properties) {
+			if (property == null) {
+				rows.add(null);
+			} else if (property instanceof AbstractSwingProperty) {
+				rowIndices.put(property, rows.size());
+				rows.add((AbstractSwingProperty<?, ?, ?>) property);
+				property.addWeakChangeListener(repainter);
+			}
+		}
+
+		table = new JTable(model);
+		table.setTableHeader(null);
+		table.setShowGrid(false);
+		table.setRowSelectionAllowed(false);
+		table.setFillsViewportHeight(true);
+		table.setSurrendersFocusOnKeystroke(true);
+		table.putClientProperty("terminateEditOnFocusLost", Boolean.TRUE); //$NON-NLS-1$
+
+		NameRenderer nameRenderer = new NameRenderer();
+		ValueRenderer valueRenderer = new ValueRenderer();
+		table.getColumnModel().getColumn(NAME_COLUMN)
+				.setCellRenderer(nameRenderer);
+		table.getColumnModel().getColumn(VALUE_COLUMN)
+				.setCellRenderer(valueRenderer);
+		table.getColumnModel().getColumn(VALUE_COLUMN)
+				.setCellEditor(new ValueEditor());
+
+		// Size each row to fit its viewer. The viewers are shared per
+		// property class, so this creates only a handful of components.
+		Map<Class<?>, Integer> heights = new HashMap<Class<?>, Integer>();
+		FontMetrics fm = table.getFontMetrics(nameRenderer.getFont());
+		int nameWidth = 0;
+		int minHeight = fm.getHeight() + PADDING;
+		for (int row = 0; row < rows.size(); row++) {
+			AbstractSwingProperty<?, ?, ?> sp = rows.get(row);
+			if (sp == null) {
+				continue;
+			}
+			if (sp.getName() != null) {
+				nameWidth = Math.max(nameWidth, fm.stringWidth(sp.getName()));
+			}
+			Integer height = heights.get(sp.getClass());
+			if (height == null) {
+				height = Math.max(minHeight, valueRenderer.getStamp(sp)
+						.getPreferredSize().height + PADDING);
+				heights.put(sp.getClass(), height);
+			}
+			if (height != table.getRowHeight()) {
+				table.setRowHeight(row, height);
+			}
+		}
+		table.getColumnModel().getColumn(NAME_COLUMN)
+				.setPreferredWidth(nameWidth + PADDING * 2);
+		table.getColumnModel().getColumn(NAME_COLUMN)
+				.setMaxWidth(nameWidth + PADDING * 2);
+
+		add(new JScrollPane(table), BorderLayout.CENTER);
+	}
+
+	/**
+	 * Sets the edit/view mode. Any edit in progress is committed.
+	 * 
+	 * @param editing
+	 *            whether this panel is for editing ({@code true}) or viewing (
+	 *            {@code false})
+	 */
+	public void setEditing(boolean editing) {
+		if (!editing && table.isEditing()) {
+			table.getCellEditor().stopCellEditing();
+		}
+		this.editing = editing;
+	}
+
+	/**
+	 * Determines whether this panel is in edit mode.
+	 * 
+	 * @return {@code true} if the panel is for editing
+	 */
+	public boolean isEditing() {
+		return editing;
+	}
+
+	/**
+	 * Disposes of this panel: cancels any edit in progress and removes the
+	 * listeners it registered on its properties. The panel should not be used
+	 * afterward.
+	 */
+	public void dispose() {
+		if (table.isEditing()) {
+			table.getCellEditor().cancelCellEditing();
+		}
+		for (AbstractSwingProperty<?, ?, ?> property : rows) {
+			if (property != null) {
+				property.removeChangeListener(repainter);
+			}
+		}
+	}
+
+	/**
+	 * Gets an unmodifiable copy of the properties in this panel.
+	 * 
+	 * @return the properties
+	 */
+	public Collection<? extends AbstractProperty<?>> getProperties() {
+		return Collections.unmodifiableList(rows);
+	}
+
+	/**
+	 * Gets the table used to display the properties.
+	 * 
+	 * @return the table
+	 */
+	public JTable getTable() {
+		return table;
+	}
+
+	/**
+	 * The model for the table. Both columns contain the row's property.
+	 * 
+	 * @author William Chargin
+	 * 
+	 */
+	private class PropertyTableModel extends AbstractTableModel {
+
+		/**
+		 * 
+		 */
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public int getRowCount() {
+			return rows.size();
+		}
+
+		@Override
+		public int getColumnCount() {
+			return 2;
+		}
+
+		@Override
+		public Object getValueAt(int row, int column) {
+			return rows.get(row);
+		}
+
+		@Override
+		public boolean isCellEditable(int row, int column) {
+			AbstractSwingProperty<?, ?, ?> sp = rows.get(row);
+			return editing && column == VALUE_COLUMN && sp != null
+					&& sp.isEnabled();
+		}
+
+		@Override
+		public void setValueAt(Object value, int row, int column) {
+			// The editor writes directly to the property.
+		}
+	}
+
+	/**
+	 * The renderer for the name column.
+	 * 
+	 * @author William Chargin
+	 * 
+	 */
+	private class NameRenderer extends JLabel implements TableCellRenderer {
+
+		/**
+		 * 
+		 */
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The separator displayed for {@code null} rows.
+		 */
+		private final JSeparator separator = new JSeparator(
+				JSeparator.HORIZONTAL);
+
+		/**
+		 * Creates the renderer.
+		 */
+		private NameRenderer() {
+			super();
+			setFont(getFont().deriveFont(Font.BOLD));
+			setHorizontalAlignment(JLabel.TRAILING);
+		}
+
+		@Override
+		public Component getTableCellRendererComponent(JTable table,
+				Object value, boolean isSelected, boolean hasFocus, int row,
+				int column) {
+			if (value == null) {
+				return separator;
+			}
+			AbstractProperty<?> property = (AbstractProperty<?>) value;
+			setText(property.getName());
+			setToolTipText(property.getDescription());
+			setEnabled(((AbstractSwingProperty<?, ?, ?>) property).isEnabled());
+			return this;
+		}
+	}
+
+	/**
+	 * The renderer for the value column. It keeps one viewer per property
+	 * class and re-targets it to each row as the row is painted.
+	 * 
+	 * @author William Chargin
+	 * 
+	 */
+	private class ValueRenderer implements TableCellRenderer {
+
+		/**
+		 * The shared viewer for each property class.
+		 */
+		private final Map<Class<?>, JComponent> stamps = new HashMap<Class<?>, JComponent>();
+
+		/**
+		 * The separator displayed for {@code null} rows.
+		 */
+		private final JSeparator separator = new JSeparator(
+				JSeparator.HORIZONTAL);
+
+		/**
+		 * Gets the shared viewer for the given property's class, updated to
+		 * display the property.
+		 * 
+		 * @param property
+		 *            the property to display
+		 * @return the viewer
+		 */
+		private JComponent getStamp(AbstractSwingProperty<?, ?, ?> property) {
+			JComponent stamp = stamps.get(property.getClass());
+			if (stamp == null) {
+				stamp = property.createDetachedViewer();
+				stamps.put(property.getClass(), stamp);
+			} else {
+				property.updateDetachedViewer(stamp);
+			}
+			return stamp;
+		}
+
+		@Override
+		public Component getTableCellRendererComponent(JTable table,
+				Object value, boolean isSelected, boolean hasFocus, int row,
+				int column) {
+			if (value == null) {
+				return separator;
+			}
+			return getStamp((AbstractSwingProperty<?, ?, ?>) value);
+		}
+	}
+
+	/**
+	 * The editor for the value column. It asks the row's property for a new
+	 * editor each time editing starts, and releases it when editing stops.
+	 * 
+	 * @author William Chargin
+	 * 
+	 */
+	private class ValueEditor extends AbstractCellEditor implements
+			TableCellEditor {
+
+		/**
+		 * 
+		 */
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The property being edited, or {@code null} if none is.
+		 */
+		private AbstractSwingProperty<?, ?, ?> property;
+
+		/**
+		 * The editor in use, or {@code null} if none is.
+		 */
+		private JComponent editor;
+
+		@Override
+		public Component getTableCellEditorComponent(JTable table,
+				Object value, boolean isSelected, int row, int column) {
+			release();
+			property = (AbstractSwingProperty<?, ?, ?>) value;
+			editor = property.getEditor();
+			return editor;
+		}
+
+		@Override
+		public Object getCellEditorValue() {
+			return property;
+		}
+
+		@Override
+		public boolean isCellEditable(EventObject e) {
+			// Start editing on a single click, like the editors of a
+			// PropertyPanel.
+			return true;
+		}
+
+		@Override
+		public boolean stopCellEditing() {
+			release();
+			return super.stopCellEditing();
+		}
+
+		@Override
+		public void cancelCellEditing() {
+			release();
+			super.cancelCellEditing();
+		}
+
+		/**
+		 * Releases the current editor, if any.
+		 */
+		private void release() {
+			if (property != null) {
+				property.release(editor);
+				property = null;
+				editor = null;
+			}
+		}
+	}
+}